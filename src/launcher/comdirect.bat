@@ -0,0 +1,4 @@
+@echo off
+rem Startet Comdirect mit der mitgelieferten Runtime (JavaFX ist als Modul im Runtime-Image enthalten)
+set APP_HOME=%~dp0
+"%APP_HOME%runtime\bin\javaw.exe" -Dcomdirect.distribution=@OS@ -cp "%APP_HOME%lib\*" comdirect.Main %*
@@ -0,0 +1,4 @@
+#!/bin/sh
+# Startet Comdirect mit der mitgelieferten Runtime (JavaFX ist als Modul im Runtime-Image enthalten)
+APP_HOME=$(cd "$(dirname "$0")" && pwd)
+exec "$APP_HOME/runtime/bin/java" -Dcomdirect.distribution=@OS@ -cp "$APP_HOME/lib/*" comdirect.Main "$@"
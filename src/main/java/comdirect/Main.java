@@ -17,7 +17,10 @@ public class Main extends Application {
 
     public static void main(String[] args) {
         // Dynamischen Klassenpfad für plattformspezifische JavaFX-JARs setzen
-        configurePlatformSpecificClasspath();
+        // (entfällt in den plattformspezifischen Distributionen, dort ist JavaFX Teil der Runtime)
+        if (System.getProperty("comdirect.distribution") == null) {
+            configurePlatformSpecificClasspath();
+        }
 
         // Starte die JavaFX-Anwendung
         launch(args);
@@ -4,7 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Component
@@ -14,7 +17,20 @@ public class ComdirectConfig {
     private LoginConfig login;
     private UiConfig ui;
     private BrowserConfig browser;
+    private SessionConfig session = new SessionConfig();
+    private CaptureConfig capture = new CaptureConfig();
+    private NetworkConfig network = new NetworkConfig();
+    private PrefetchConfig prefetch = new PrefetchConfig();
+    private MemoryConfig memory = new MemoryConfig();
+    private LoadStrategyConfig loadStrategy = new LoadStrategyConfig();
+    private TracingConfig tracing = new TracingConfig();
+    private ResourceServerConfig resourceServer = new ResourceServerConfig();
+    private SearchConfig search = new SearchConfig();
+    private JournalConfig journal = new JournalConfig();
+    private EventsConfig events = new EventsConfig();
+    private ExportConfig export = new ExportConfig();
     private List<Bookmark> bookmarks; // Liste für Bookmarks
+    private List<ExtractorConfig> extractors = new ArrayList<>(); // Deklarative Seiten-Extraktoren
 
 
     @Data
@@ -37,6 +53,16 @@ public class ComdirectConfig {
         private String urlHome;
         private boolean enableJavascriptDebug;
         private boolean enableJavascriptConsole;
+        private WebViewConfig webView = new WebViewConfig();
+    }
+
+    @Data
+    public static class WebViewConfig {
+        private int maintenanceIntervalSeconds = 300;
+        private int historySize = 10; // Einträge in der WebEngine-History
+        private int maxHeapMb = 1024; // Neuaufbau der WebView bei Überschreitung
+        private int maxNativeMb = 1536; // Neuaufbau der WebView bei Überschreitung (nur Linux messbar)
+        private int maxLoadsPerView = 200; // Neuaufbau spätestens nach so vielen Ladevorgängen
     }
 
     @Data
@@ -47,6 +73,139 @@ public class ComdirectConfig {
         private String downloadFolder;
         private String defaultBrowser;
         private String edgePath;
+        private DaemonConfig daemon = new DaemonConfig();
+        private BootstrapConfig bootstrap = new BootstrapConfig();
+    }
+
+    @Data
+    public static class DaemonConfig {
+        private boolean enabled; // Browser als eigenständigen Prozess betreiben, der Neustarts der Anwendung überlebt
+        private String cdpEndpoint = "http://127.0.0.1:9222";
+        private boolean launchIfMissing = true; // Chromium starten, wenn am Endpunkt kein Browser läuft
+        private String userDataDir = "browser-profile"; // Profil des Daemons (Cookies bleiben erhalten)
+        private int connectTimeoutMs = 5000;
+    }
+
+    @Data
+    public static class BootstrapConfig {
+        private boolean enabled = true; // Treiber und Browser aus einem festen Cache statt bei jedem Start entpacken
+        private String cacheDirectory = "playwright-cache"; // Unterverzeichnis pro Playwright-Version und Plattform
+    }
+
+    @Data
+    public static class SessionConfig {
+        private boolean keepAlive;
+        private int timeoutSeconds = 600; // Serverseitiges Session-Timeout
+        private int keepAliveMarginSeconds = 90; // Vorlauf vor dem Timeout
+        private String keepAliveUrl;
+        private String loginUrlPattern; // Umleitung hierhin bedeutet Session-Verlust
+        private String authenticatedUrlPattern; // Navigation hierhin bedeutet aktive Session
+    }
+
+    @Data
+    public static class CaptureConfig {
+        private boolean enabled;
+        private int bufferSize = 8192; // Anzahl Frames im Ringpuffer
+        private List<String> xhrUrlPatterns = new ArrayList<>(); // Teilstrings, leer = keine XHR-Erfassung
+        private String fileSink; // Optional: Datei, an die alle Frames angehängt werden
+        private int pumpIntervalMillis = 100; // Playwright liefert Events nur während eines Aufrufs aus
+    }
+
+    @Data
+    public static class NetworkConfig {
+        private String mode = "live"; // live, record, replay
+        private String harPath = "sessions/session.har"; // Aufzeichnungen erhalten einen Zeitstempel im Namen
+        private List<String> scrubHeaders = new ArrayList<>(List.of("cookie", "set-cookie", "authorization"));
+        private List<String> scrubParams = new ArrayList<>(List.of("loginForm:userName", "loginForm:pin", "pin", "password", "token"));
+    }
+
+    @Data
+    public static class PrefetchConfig {
+        private boolean enabled;
+        private List<String> bookmarks = new ArrayList<>(); // Bookmark-Namen, leer = alle
+        private int maxPages = 3; // Obergrenze für Hintergrundseiten
+        private int refreshIntervalSeconds = 120;
+    }
+
+    @Data
+    public static class MemoryConfig {
+        private boolean enabled;
+        private int budgetMb = 2048; // Speicherbudget für Playwright-Treiber und Browser-Prozesse
+        private int sampleIntervalSeconds = 60;
+        private int idleSeconds = 30; // Recycling nur nach dieser Zeit ohne Netzwerkaktivität
+    }
+
+    @Data
+    public static class LoadStrategyConfig {
+        private String defaultStrategy = "load"; // domcontentloaded, load, networkidle, selector, adaptive
+        private int defaultTimeoutMs = 30000;
+        private int formNavigationStartMs = 5000; // Startet ein Formular bis dahin keine Navigation, gilt der aktuelle Stand
+        private int learningRuns = 3; // Beobachtungen, bevor der adaptive Modus früher abbricht
+        private int reverifyEvery = 20; // Jede n-te Navigation lernt erneut
+        private List<LoadRule> rules = new ArrayList<>();
+    }
+
+    @Data
+    public static class LoadRule {
+        private String pattern; // Regulärer Ausdruck auf die URL
+        private String strategy;
+        private String selector; // Nur für strategy=selector
+        private Integer timeoutMs;
+    }
+
+    @Data
+    public static class TracingConfig {
+        private boolean enabled;
+        private int thresholdMs = 3000; // Langsamere Navigationen werden gespeichert
+        private String directory = "traces";
+        private int maxTraces = 20;
+        private int maxTotalMb = 500;
+        private boolean screenshots = true;
+        private boolean snapshots = true;
+    }
+
+    @Data
+    public static class ResourceServerConfig {
+        private boolean enabled;
+        private int port; // 0 = freier Port
+        private int maxMemoryMb = 64; // Kleine Antworten im Speicher
+        private int maxDiskMb = 256; // Große Antworten als Datei
+        private int spillThresholdKb = 512; // Ab dieser Größe wird auf Platte ausgelagert
+    }
+
+    @Data
+    public static class SearchConfig {
+        private boolean enabled;
+        private String directory = "search-index";
+        private int maxDocuments = 2000; // Älteste Seiten fallen beim Mergen heraus
+        private int textChars = 2000; // Gespeicherter Text pro Seite (für Snippets)
+        private int flushPostings = 20000; // Speichersegment ab dieser Größe auf die Platte schreiben
+        private int maxSegments = 4; // Darüber werden die Segmente zusammengeführt
+        private int queueSize = 32; // Wartende Snapshots, weitere werden verworfen
+    }
+
+    @Data
+    public static class JournalConfig {
+        private String directory = "session";
+        private int maxLogMb = 16; // Beim Start auf die History verkleinern, wenn größer
+        private boolean restoreLastPage; // Beim Start die zuletzt angezeigte Seite statt der Startseite laden
+    }
+
+    @Data
+    public static class ExportConfig {
+        private String directory = "export"; // PDFs landen in <directory>/<jjjj>/<jjjj-MM>/<jjjj-MM-tt>/
+        private int workers = 2; // Parallele Headless-Browser, je ein Node-Treiber mit Chromium (grob 250-400 MB pro Worker)
+        private int timeoutMs = 30000; // Pro Seite für Navigation und PDF
+        private String format = "A4";
+        private boolean printBackground = true;
+    }
+
+    @Data
+    public static class EventsConfig {
+        private int queueCapacity = 1024; // Warteschlange pro Abonnent
+        private String overflowPolicy = "drop"; // drop = verwerfen, block = Playwright-Thread bremsen
+        private boolean logNavigation = true;
+        private boolean logRequests;
     }
 
     @Data
@@ -54,4 +213,14 @@ public class ComdirectConfig {
         private String name;
         private String url;
     }
+
+    @Data
+    public static class ExtractorConfig {
+        private String name;
+        private String url;
+        private String rowSelector; // Nur der letzte Teil des Selektors wird geprüft (Streaming)
+        private String keyField; // Optional, sonst dient der Hash des Datensatzes als Schlüssel
+        private int intervalSeconds = 60;
+        private Map<String, String> fields = new LinkedHashMap<>(); // Feldname -> Selektor, optional "@attr"
+    }
 }
@@ -121,6 +121,14 @@ public class BrowserUtils {
         alert.showAndWait();
     }
 
+    static void showInfo(String title, String header, String content) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(header);
+        alert.setContentText(content);
+        alert.showAndWait();
+    }
+
     public static void closeCookieBanner(Page page) {
         if (page.locator("button:has-text('Alle akzeptieren')").isVisible()) {
             page.click("button:has-text('Alle akzeptieren')");
@@ -2,18 +2,43 @@ package comdirect.controllers;
 
 import comdirect.config.ComdirectConfig;
 import comdirect.services.BookmarkManager;
+import comdirect.services.BookmarkPrefetcher;
 import comdirect.services.BrowseService;
+import comdirect.services.PdfExportService;
+import comdirect.services.ResourceServer;
+import comdirect.services.SearchHit;
+import comdirect.services.SnapshotIndexService;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
+import javafx.scene.Parent;
+import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.CustomMenuItem;
+import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
 import javafx.scene.web.WebView;
+import javafx.util.Duration;
 import netscape.javascript.JSObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
 @Controller
 public class MainController {
 
@@ -38,15 +63,51 @@ public class MainController {
     @FXML
     private ComboBox<String> bookmarkSelector;
 
+    @FXML
+    private TextField searchField;
+
+    @FXML
+    private Button exportButton;
+
     @Autowired
     private BrowseService browseService;
 
     @Autowired
     private BookmarkManager bookmarkManager;
 
-    private boolean isLoading;
+    @Autowired
+    private BookmarkPrefetcher bookmarkPrefetcher;
+
+    @Autowired
+    private ResourceServer resourceServer;
+
+    @Autowired
+    private SnapshotIndexService snapshotIndex;
+
+    @Autowired
+    private PdfExportService pdfExport;
+
+    private static final int SEARCH_RESULTS = 10;
+
+    private final ContextMenu searchResults = new ContextMenu();
+
+    private final RenderScheduler renderScheduler = new RenderScheduler(this::renderSnapshot);
+
+    // Ein Thread: Navigationen laufen in der Reihenfolge ihres Starts, Playwright serialisiert ohnehin
+    private final ExecutorService navigationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "navigation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private WebViewBridge bridge;
 
+    private RenderScheduler.Snapshot lastSnapshot;
+    private int loadsSinceRebuild;
+    private double[] pendingScroll;
+
+    private boolean updatingBookmarkSelector;
+
     @FXML
     public void initialize() {
         // Browser-Dropdown initialisieren
@@ -56,39 +117,39 @@ public class MainController {
         // Bookmarks in die ComboBox laden
         bookmarkSelector.getItems().addAll(bookmarkManager.getBookmarkNames());
 
+        // Suche ist opt-in, ohne Index bleibt das Feld gesperrt
+        searchField.setDisable(!config.getSearch().isEnabled());
+
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////
         /// WebView-Initialisierung
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-        webView.getEngine().setJavaScriptEnabled(true); // Make sure JavaScript is enabled!
-        webView.getEngine().getLoadWorker().stateProperty().addListener((obs, oldState, newState) -> {
-            if (newState == javafx.concurrent.Worker.State.SUCCEEDED) {
-                // Seite wurde vollständig geladen
-                System.out.println("Seite vollständig geladen, registriere Bridge und JavaScript.");
-
-                // Registriere die Bridge nur, wenn sie nicht bereits registriert ist
-                JSObject window = (JSObject) webView.getEngine().executeScript("window");
-                bridge = new WebViewBridge(this, browseService);
-                window.setMember("bridge", bridge);
-            }
-        });
-        webView.getEngine().locationProperty().addListener((obs, oldLocation, newLocation) -> {
-            if (newLocation.startsWith("bridge://")) {
-                bridge.handleBridgeRequest(newLocation);
-            }
-        });
+        bridge = new WebViewBridge(this, browseService); // Eine Instanz für alle Ladevorgänge
+        configureWebView(webView);
+        startWebViewMaintenance();
 
-        if(config.getUi().isLoadHomePageAtStartup()) {
+        if (browseService.isResumedPage()) {
+            // Seite aus dem Browser-Daemon übernehmen, Session ist in der Regel noch aktiv
+            displayNavigation(browseService::resumePage);
+            bookmarkPrefetcher.start();
+            return;
+        }
+        CompletableFuture<?> startPage = CompletableFuture.completedFuture(null);
+        if (config.getJournal().isRestoreLastPage() && browseService.getLastSessionUrl() != null) {
+            // Zuletzt angezeigte Seite der vorherigen Sitzung laden, History bleibt erhalten
+            startPage = displayNavigation(browseService::restoreLastPage);
+        } else if(config.getUi().isLoadHomePageAtStartup()) {
             if (config.getUi().isAutoCloseCookieBannerAtStartup()) {
                 // Cookie-Banner schließen
-                displayHtmlInWebView(browseService.navigateToAndCloseCookieBanner(config.getUi().getUrlHome()));
+                startPage = displayNavigation(() -> browseService.navigateToAndCloseCookieBanner(config.getUi().getUrlHome()));
             } else {
                 // Standardseite anzeigen
-                displayHtmlInWebView(browseService.navigateTo(config.getUi().getUrlHome()));
+                startPage = displayNavigation(() -> browseService.navigateTo(config.getUi().getUrlHome()));
             }
         }
         if(config.getLogin().isAutoLogin()) {
-            onLoginClick(null);
+            // Erst nach der Startseite, sonst überholt die Startseite die Login-Seite
+            startPage.whenComplete((result, error) -> Platform.runLater(() -> onLoginClick(null)));
         }
     }
 
@@ -96,18 +157,42 @@ public class MainController {
     /// WebView-Interaktionen
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    synchronized void displayHtmlInWebView(String htmlContent) {
-        if (isLoading) return;
-        isLoading = true;
-        Platform.runLater(() -> {
-            try {
-                webView.getEngine().loadContent(appendScripts(htmlContent));
-                addressBar.setText(browseService.page.url());
-            } finally {
-                // isLoading zurücksetzen, auch wenn ein Fehler auftritt
-                isLoading = false;
-            }
-        });
+    void displayHtmlInWebView(String htmlContent) {
+        renderScheduler.submit(renderScheduler.nextGeneration(), htmlContent, browseService.page.url());
+    }
+
+    /**
+     * Führt eine Navigation im Hintergrund aus und zeigt ihr Ergebnis an, sofern inzwischen keine neuere Navigation
+     * gestartet wurde. Der FX-Thread bleibt währenddessen frei. Ist beim Start der Navigation bereits eine neuere
+     * angefordert, wird sie gar nicht erst ausgeführt.
+     *
+     * @return Der übergebene Snapshot; null, wenn die Navigation übersprungen wurde oder fehlgeschlagen ist
+     */
+    CompletableFuture<RenderScheduler.Snapshot> displayNavigation(Supplier<String> navigation) {
+        long generation = renderScheduler.nextGeneration();
+        return CompletableFuture
+                // HTML und URL unter derselben Sperre lesen, damit beide zur selben Navigation gehören
+                .supplyAsync(() -> generation < renderScheduler.currentGeneration() ? null
+                        : browseService.callPlaywright(() ->
+                                new RenderScheduler.Snapshot(generation, navigation.get(), browseService.page.url())), navigationExecutor)
+                .thenApply(snapshot -> {
+                    if (snapshot != null) renderScheduler.submit(snapshot.generation(), snapshot.html(), snapshot.url());
+                    return snapshot;
+                })
+                .exceptionally(error -> {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error; // CompletionException
+                    cause.printStackTrace();
+                    Platform.runLater(() -> BrowserUtils.showError("Fehler", "Navigation fehlgeschlagen", cause.getMessage()));
+                    return null;
+                });
+    }
+
+    private void renderSnapshot(RenderScheduler.Snapshot snapshot) {
+        lastSnapshot = snapshot;
+        loadsSinceRebuild++;
+        // Unterressourcen über den lokalen Server aus den Antworten laden, die Playwright bereits erhalten hat
+        webView.getEngine().loadContent(appendScripts(resourceServer.rewrite(snapshot.html(), snapshot.url())));
+        addressBar.setText(snapshot.url());
     }
 
     private String appendScripts (String htmlContent) {
@@ -118,27 +203,115 @@ public class MainController {
             "</script>";
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// WebView-Lebenszyklus
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void configureWebView(WebView view) {
+        view.getEngine().setJavaScriptEnabled(true); // Make sure JavaScript is enabled!
+        view.getEngine().getHistory().setMaxSize(config.getUi().getWebView().getHistorySize());
+        view.getEngine().getLoadWorker().stateProperty().addListener((obs, oldState, newState) -> {
+            if (newState == javafx.concurrent.Worker.State.SUCCEEDED) {
+                // Seite wurde vollständig geladen
+                System.out.println("Seite vollständig geladen, registriere Bridge und JavaScript.");
+
+                JSObject window = (JSObject) view.getEngine().executeScript("window");
+                window.setMember("bridge", bridge);
+
+                if (pendingScroll != null) {
+                    // Scrollposition nach dem Neuaufbau der WebView wiederherstellen
+                    view.getEngine().executeScript("window.scrollTo(" + pendingScroll[0] + ", " + pendingScroll[1] + ")");
+                    pendingScroll = null;
+                }
+            }
+        });
+        view.getEngine().locationProperty().addListener((obs, oldLocation, newLocation) -> {
+            if (newLocation.startsWith("bridge://")) {
+                bridge.handleBridgeRequest(newLocation);
+            }
+        });
+    }
+
+    /**
+     * Leert regelmäßig die History der WebEngine und baut die WebView neu auf, wenn Heap, nativer Speicher oder
+     * die Anzahl der Ladevorgänge die Grenzwerte überschreiten. Nur ein Neuaufbau gibt die Caches von WebKit frei.
+     */
+    private void startWebViewMaintenance() {
+        ComdirectConfig.WebViewConfig webViewConfig = config.getUi().getWebView();
+        if (webViewConfig.getMaintenanceIntervalSeconds() <= 0) return;
+
+        Timeline maintenance = new Timeline(new KeyFrame(
+                Duration.seconds(webViewConfig.getMaintenanceIntervalSeconds()), event -> maintainWebView()));
+        maintenance.setCycleCount(Timeline.INDEFINITE);
+        maintenance.play();
+    }
+
+    private void maintainWebView() {
+        ComdirectConfig.WebViewConfig webViewConfig = config.getUi().getWebView();
+
+        // History leeren, ohne die konfigurierte Größe zu verlieren
+        webView.getEngine().getHistory().setMaxSize(0);
+        webView.getEngine().getHistory().setMaxSize(webViewConfig.getHistorySize());
+
+        long heapMb = WebViewMemoryProbe.usedHeapBytes() / (1024 * 1024);
+        long nativeMb = WebViewMemoryProbe.nativeBytes() / (1024 * 1024);
+        boolean exceeded = heapMb > webViewConfig.getMaxHeapMb()
+                || nativeMb > webViewConfig.getMaxNativeMb()
+                || loadsSinceRebuild > webViewConfig.getMaxLoadsPerView();
+
+        System.out.println("WebView-Wartung: Heap " + heapMb + " MB, nativ " + nativeMb + " MB, "
+                + loadsSinceRebuild + " Ladevorgänge" + (exceeded ? " -> Neuaufbau" : ""));
+        if (exceeded) rebuildWebView();
+    }
+
+    private void rebuildWebView() {
+        WebView oldView = webView;
+        Parent parent = oldView.getParent();
+
+        try {
+            Object scroll = oldView.getEngine().executeScript("window.scrollX + ',' + window.scrollY");
+            String[] position = String.valueOf(scroll).split(",");
+            pendingScroll = new double[]{Double.parseDouble(position[0]), Double.parseDouble(position[1])};
+        } catch (Exception e) {
+            pendingScroll = null;
+        }
+
+        WebView newView = new WebView();
+        configureWebView(newView);
+        if (parent instanceof BorderPane borderPane && borderPane.getCenter() == oldView) {
+            borderPane.setCenter(newView);
+        } else if (parent instanceof Pane pane) {
+            pane.getChildren().set(pane.getChildren().indexOf(oldView), newView);
+        } else {
+            System.err.println("WebView kann nicht ersetzt werden, unbekannter Container: " + parent);
+            return;
+        }
+
+        // Dokument der alten WebView freigeben, damit WebKit DOM und Caches verwerfen kann
+        oldView.getEngine().loadContent("");
+        webView = newView;
+        loadsSinceRebuild = 0;
+
+        if (lastSnapshot != null) renderSnapshot(lastSnapshot);
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     /// Event handlers for JavaFX controls
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     @FXML
     protected void onHomeClick() {
-        displayHtmlInWebView(browseService.navigateTo(config.getUi().getUrlHome()));
-        bookmarkSelector.setValue(bookmarkManager.getPageName());
+        displayNavigation(() -> browseService.navigateTo(config.getUi().getUrlHome())).thenAccept(this::showBookmarkOf);
     }
 
     @FXML
     protected void onBackClick() {
-        displayHtmlInWebView(browseService.navigateBack());
-        bookmarkSelector.setValue(bookmarkManager.getPageName());
+        displayNavigation(browseService::navigateBack).thenAccept(this::showBookmarkOf);
     }
 
     @FXML
     public void onForwardClick(ActionEvent actionEvent) {
-        bookmarkSelector.setValue(null);
-        displayHtmlInWebView(browseService.navigateForward());
-        bookmarkSelector.setValue(bookmarkManager.getPageName());
+        displayNavigation(browseService::navigateForward).thenAccept(this::showBookmarkOf);
     }
 
     @FXML
@@ -147,8 +320,35 @@ public class MainController {
         if (!url.startsWith("http://") && !url.startsWith("https://")) {
             url = "https://" + url;
         }
-        displayHtmlInWebView(browseService.navigateTo(url));
-        bookmarkSelector.setValue(bookmarkManager.getPageName());
+        String target = url;
+        displayNavigation(() -> browseService.navigateTo(target)).thenAccept(this::showBookmarkOf);
+    }
+
+    @FXML
+    protected void onSearch() {
+        String query = searchField.getText();
+        long start = System.nanoTime();
+        List<SearchHit> hits = snapshotIndex.search(query, SEARCH_RESULTS);
+        System.out.println("Suche \"" + query + "\": " + hits.size() + " Treffer in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        searchResults.getItems().clear();
+        if (hits.isEmpty()) {
+            MenuItem none = new MenuItem("Keine Treffer");
+            none.setDisable(true);
+            searchResults.getItems().add(none);
+        }
+        for (SearchHit hit : hits) {
+            Label label = new Label((hit.title().isBlank() ? hit.url() : hit.title()) + "\n" + hit.snippet());
+            label.setWrapText(true);
+            label.setMaxWidth(500);
+            CustomMenuItem item = new CustomMenuItem(label, true);
+            item.setOnAction(event -> {
+                displayNavigation(() -> browseService.navigateTo(hit.url())).thenAccept(this::showBookmarkOf);
+            });
+            searchResults.getItems().add(item);
+        }
+        searchResults.show(searchField, Side.BOTTOM, 0, 0);
     }
 
     @FXML
@@ -157,6 +357,38 @@ public class MainController {
         BrowserUtils.showError("Fehler", "Aktion fehlgeschlagen", "Not implemented yet.");
     }
 
+    @FXML
+    protected void onPdfExportClick() {
+        TextInputDialog dialog = new TextInputDialog(String.join(", ", bookmarkManager.getBookmarkNames()));
+        dialog.setTitle("PDF-Export");
+        dialog.setHeaderText("Bookmarks oder URLs (kommagetrennt) als PDF exportieren:");
+        dialog.setContentText("Seiten:");
+        List<String> targets = dialog.showAndWait()
+                .map(input -> Arrays.stream(input.split(",")).map(String::trim).filter(target -> !target.isEmpty()).toList())
+                .orElse(List.of());
+        if (targets.isEmpty()) return;
+
+        // Export im Hintergrund, Fortschritt auf dem Button
+        exportButton.setDisable(true);
+        CompletableFuture.supplyAsync(() -> pdfExport.export(targets, (done, total) ->
+                        Platform.runLater(() -> exportButton.setText("PDF-Export " + done + "/" + total))))
+                .whenComplete((report, error) -> Platform.runLater(() -> {
+                    exportButton.setText("PDF-Export");
+                    exportButton.setDisable(false);
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error; // CompletionException
+                        BrowserUtils.showError("Fehler", "PDF-Export fehlgeschlagen", cause.getMessage());
+                        return;
+                    }
+                    String summary = String.format("%d Seiten in %.0f s (%.1f Seiten/Minute) nach%n%s",
+                            report.exported(), report.durationMillis() / 1000.0, report.pagesPerMinute(), report.directory());
+                    if (!report.failed().isEmpty()) {
+                        summary += "\n\nFehlgeschlagen:\n" + String.join("\n", report.failed());
+                    }
+                    BrowserUtils.showInfo("PDF-Export", "Export abgeschlossen", summary);
+                }));
+    }
+
     @FXML
     public void onBrowserSelectionChanged(ActionEvent actionEvent) {
         String selectedBrowser = browserSelector.getValue();
@@ -165,29 +397,41 @@ public class MainController {
 
     @FXML
     public void onRefreshClick(ActionEvent actionEvent) {
-        displayHtmlInWebView(browseService.refreshPage());
+        displayNavigation(browseService::refreshPage);
     }
 
     @FXML
     public void onLoginClick(ActionEvent actionEvent) {
-        bookmarkSelector.setValue(null);
+        selectBookmark(null);
         try {
-            if(config.getLogin().isUseDifferentLoginUrl())
-            {
-                if(config.getLogin().isAutoCloseCookieBanner()) {
-                    // Cookie-Banner schließen und Login-Seite anzeigen
-                    displayHtmlInWebView(browseService.navigateToAndCloseCookieBanner(config.getLogin().getUrl()));
-                } else {
-                    // Login-Seite anzeigen
-                    displayHtmlInWebView(browseService.navigateTo(config.getLogin().getUrl()));
-                }
-            }
+            // Login-Seite im Hintergrund laden, während der Benutzer die Zugangsdaten eingibt
+            CompletableFuture<LoginPageLoad> loginPage = config.getLogin().isUseDifferentLoginUrl()
+                    ? loadLoginPage()
+                    : CompletableFuture.completedFuture(null);
 
             if( BrowserUtils.requestCredentialsFromUser(config))
             {
+                // Auf die Login-Seite warten (im Idealfall ist sie längst geladen)
+                long waitStart = System.currentTimeMillis();
+                LoginPageLoad load = loginPage.join();
+                if (load != null) {
+                    long waited = System.currentTimeMillis() - waitStart;
+                    System.out.println("Login-Seite geladen in " + load.durationMillis() + " ms, davon "
+                            + Math.max(0, load.durationMillis() - waited) + " ms während der Eingabe der Zugangsdaten.");
+                }
+
                 // Login ausführen
                 String responseHtml = browseService.performLogin(config.getLogin().getUser(), config.getLogin().getPin());
                 displayHtmlInWebView(responseHtml);
+
+                // Häufige Bookmarks im Hintergrund vorladen (falls aktiviert)
+                bookmarkPrefetcher.start();
+            } else {
+                // Abgebrochen: Login-Seite anzeigen, sobald sie geladen ist
+                loginPage.thenAccept(load -> {
+                    // Mit der Generation der Login-Navigation: eine inzwischen neuere Navigation wird nicht überschrieben
+                    if (load != null) renderScheduler.submit(load.generation(), load.html(), load.url());
+                });
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -195,8 +439,53 @@ public class MainController {
         }
     }
 
+    /**
+     * Lädt die Login-Seite (ggf. mit Schließen des Cookie-Banners) im Hintergrund, parallel zu den Dialogen. Läuft wie
+     * {@link #displayNavigation} auf dem Navigations-Thread, damit bereits angestoßene Navigationen (Startseite,
+     * Bookmarks) vorher abgeschlossen sind und der Login auf der Login-Seite stattfindet. Anders als dort wird die
+     * Navigation nie übersprungen, da der Login sie benötigt; nur ihre Anzeige hängt an der Generation.
+     */
+    private CompletableFuture<LoginPageLoad> loadLoginPage() {
+        long generation = renderScheduler.nextGeneration();
+        return CompletableFuture.supplyAsync(() -> browseService.callPlaywright(() -> {
+            long start = System.currentTimeMillis();
+            String html = config.getLogin().isAutoCloseCookieBanner()
+                    ? browseService.navigateToAndCloseCookieBanner(config.getLogin().getUrl())
+                    : browseService.navigateTo(config.getLogin().getUrl());
+            return new LoginPageLoad(generation, html, browseService.page.url(), System.currentTimeMillis() - start);
+        }), navigationExecutor);
+    }
+
+    private record LoginPageLoad(long generation, String html, String url, long durationMillis) {
+    }
+
+    /**
+     * Zeigt im Auswahlfeld das Bookmark der angezeigten Seite an, sofern der Snapshot noch der aktuelle ist.
+     */
+    private void showBookmarkOf(RenderScheduler.Snapshot snapshot) {
+        if (snapshot == null) return;
+        Platform.runLater(() -> {
+            if (snapshot.generation() != renderScheduler.currentGeneration()) return; // Neuere Navigation läuft
+            selectBookmark(bookmarkManager.getBookmarkNameByUrl(snapshot.url()));
+        });
+    }
+
+    /**
+     * Setzt das Auswahlfeld, ohne {@link #onBookmarkSelectionChanged} auszulösen.
+     */
+    private void selectBookmark(String name) {
+        updatingBookmarkSelector = true;
+        try {
+            bookmarkSelector.setValue(name);
+        } finally {
+            updatingBookmarkSelector = false;
+        }
+    }
+
     @FXML
     public void onBookmarkSelectionChanged(ActionEvent actionEvent) {
+        if (updatingBookmarkSelector) return; // Nur Anzeige der aktuellen Seite, keine Auswahl des Benutzers
+
         // Name des ausgewählten Bookmarks abrufen
         String selectedBookmarkName = bookmarkSelector.getValue();
 
@@ -204,8 +493,8 @@ public class MainController {
         String url = bookmarkManager.getBookmarkUrlByName(selectedBookmarkName);
 
         if (url != null) {
-            // URL im Browser öffnen
-            displayHtmlInWebView(browseService.navigateTo(url));
+            // URL im Browser öffnen (vorgeladene Seiten werden nur getauscht)
+            displayNavigation(() -> bookmarkPrefetcher.navigate(url));
         } else {
             System.err.println("Fehler: Keine URL für das ausgewählte Bookmark gefunden.");
         }
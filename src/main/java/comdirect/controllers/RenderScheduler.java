@@ -0,0 +1,154 @@
+package comdirect.controllers;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Fasst Darstellungsaufträge für die WebView zusammen (latest wins).
+ * <p>
+ * Jede Navigation holt sich vor dem Start eine Generationsnummer. Es wird immer nur der neueste ausstehende
+ * Snapshot gehalten und höchstens einmal pro JavaFX-Pulse angewendet; Ergebnisse überholter Navigationen
+ * (kleinere Generation) werden verworfen, statt veraltete Inhalte anzuzeigen.
+ */
+class RenderScheduler {
+
+    /**
+     * Anzuzeigender Seitenstand.
+     */
+    record Snapshot(long generation, String html, String url) {
+    }
+
+    private final AtomicReference<Snapshot> pending = new AtomicReference<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final AtomicLong applied = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Consumer<Snapshot> renderer;
+
+    private long appliedGeneration;
+
+    private AnimationTimer pulse; // Erst auf dem JavaFX-Thread angelegt, braucht das Toolkit
+
+    /**
+     * @param renderer Wendet einen Snapshot auf die WebView an (läuft auf dem JavaFX-Thread)
+     */
+    RenderScheduler(Consumer<Snapshot> renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Muss vor dem Start einer Navigation aufgerufen werden.
+     *
+     * @return Generation, mit der das Ergebnis später übergeben wird
+     */
+    long nextGeneration() {
+        return generation.incrementAndGet();
+    }
+
+    /**
+     * @return Generation der zuletzt gestarteten Navigation
+     */
+    long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Übergibt das Ergebnis einer Navigation. Kann von jedem Thread aufgerufen werden.
+     */
+    void submit(long snapshotGeneration, String html, String url) {
+        if (snapshotGeneration < generation.get()) {
+            // Inzwischen wurde eine neuere Navigation gestartet
+            dropped.incrementAndGet();
+            return;
+        }
+
+        Snapshot snapshot = new Snapshot(snapshotGeneration, html, url);
+        while (true) {
+            Snapshot current = pending.get();
+            if (current != null && current.generation() > snapshotGeneration) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (pending.compareAndSet(current, snapshot)) {
+                if (current != null) dropped.incrementAndGet();
+                break;
+            }
+        }
+
+        if (scheduled.compareAndSet(false, true)) requestPulse();
+    }
+
+    long getAppliedCount() {
+        return applied.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Ein Pulse: wendet den neuesten ausstehenden Snapshot an bzw. beendet den Pulse, wenn keiner aussteht.
+     * Läuft auf dem JavaFX-Thread.
+     */
+    void applyPending() {
+        Snapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            stopPulse();
+            scheduled.set(false);
+            // Auftrag, der zwischen getAndSet und stop eingetroffen ist, nicht liegen lassen
+            if (pending.get() != null && scheduled.compareAndSet(false, true)) {
+                startPulse();
+            }
+            return;
+        }
+
+        if (snapshot.generation() < appliedGeneration) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        appliedGeneration = snapshot.generation();
+        renderer.accept(snapshot);
+        applied.incrementAndGet();
+    }
+
+    /**
+     * Startet den Pulse auf dem JavaFX-Thread. Kann von jedem Thread aufgerufen werden.
+     */
+    void requestPulse() {
+        if (Platform.isFxApplicationThread()) {
+            startPulse();
+        } else {
+            Platform.runLater(this::startPulse);
+        }
+    }
+
+    /**
+     * Startet den Pulse, der {@link #applyPending} einmal pro Frame aufruft. Läuft auf dem JavaFX-Thread.
+     */
+    void startPulse() {
+        if (pulse == null) {
+            pulse = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    applyPending();
+                }
+            };
+        }
+        pulse.start();
+    }
+
+    void stopPulse() {
+        if (pulse != null) pulse.stop();
+    }
+}
@@ -37,7 +37,7 @@ public class WebViewBridge {
                 return;
             }
 
-            controller.displayHtmlInWebView(browseService.navigateTo(absoluteUrl));
+            controller.displayNavigation(() -> browseService.navigateTo(absoluteUrl));
         } catch (Exception e) {
             e.printStackTrace();
             BrowserUtils.showError("Fehler", "Link-Navigation fehlgeschlagen", e.getMessage());
@@ -48,7 +48,7 @@ public class WebViewBridge {
         System.out.println("Formular wurde abgeschickt: " + formData);
         System.out.println("Formular abgeschickt: " + formData);
         try {
-            controller.displayHtmlInWebView(browseService.postForm(formData));
+            controller.displayNavigation(() -> browseService.postForm(formData));
         } catch (Exception e) {
             e.printStackTrace();
             BrowserUtils.showError("Fehler", "Formular-Verarbeitung fehlgeschlagen", e.getMessage());
@@ -0,0 +1,42 @@
+package comdirect.controllers;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Misst den Speicher des UI-Prozesses für die WebView-Wartung.
+ * <p>
+ * WebKit allokiert seinen Speicher nativ, JavaFX bietet dafür keine API. Als Näherung dient der RSS des eigenen
+ * Prozesses abzüglich des reservierten Java-Heaps (nur Linux, sonst -1).
+ */
+final class WebViewMemoryProbe {
+
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+    private WebViewMemoryProbe() {
+    }
+
+    static long usedHeapBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    static long nativeBytes() {
+        if (!Files.isReadable(PROC_STATUS)) return -1;
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    String value = line.substring("VmRSS:".length()).trim();
+                    long rss = Long.parseLong(value.substring(0, value.indexOf(' '))) * 1024;
+                    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+                    return Math.max(0, rss - heap.getCommitted());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nicht verfügbar, Wartung arbeitet dann nur mit Heap und Ladezähler
+        }
+        return -1;
+    }
+}
@@ -46,7 +46,7 @@ public class BookmarkManager {
     /**
      * Liefert den Namen zu einer bestimmten URL.
      */
-    private String getBookmarkNameByUrl(String url) {
+    public String getBookmarkNameByUrl(String url) {
         return config.getBookmarks().stream()
                 .filter(bookmark -> bookmark.getUrl().equals(url))
                 .map(ComdirectConfig.Bookmark::getName)
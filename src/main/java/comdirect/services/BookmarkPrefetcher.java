@@ -0,0 +1,194 @@
+package comdirect.services;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.TimeoutError;
+import com.microsoft.playwright.options.LoadState;
+import com.microsoft.playwright.options.WaitUntilState;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lädt häufig genutzte Bookmarks nach dem Login in Hintergrundseiten desselben Kontexts vor.
+ * <p>
+ * Bei Auswahl eines vorgeladenen Bookmarks wird nur die aktive Seite getauscht, statt kalt zu navigieren. Die
+ * bisher aktive Seite übernimmt den frei gewordenen Platz im Pool und wird im Hintergrund wieder auf das
+ * Bookmark geladen, die Anzahl der Hintergrundseiten bleibt so konstant (höchstens {@code maxPages}).
+ */
+@Service
+public class BookmarkPrefetcher {
+    private static final long TICK_SECONDS = 5;
+
+    private static final double LOAD_SLICE_MS = 100; // Längste Sperre pro Warteabschnitt
+
+    private final BrowseService browseService;
+
+    private final BookmarkManager bookmarkManager;
+
+    private final ComdirectConfig.PrefetchConfig config;
+
+    private final int loadTimeoutMs;
+
+    private final Map<String, Slot> pool = new LinkedHashMap<>(); // URL -> Hintergrundseite, Zugriff nur unter callPlaywright
+
+    private ScheduledExecutorService refresher;
+
+    public BookmarkPrefetcher(BrowseService browseService, BookmarkManager bookmarkManager, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.bookmarkManager = bookmarkManager;
+        this.config = config.getPrefetch();
+        this.loadTimeoutMs = config.getLoadStrategy().getDefaultTimeoutMs();
+    }
+
+    @PostConstruct
+    public void init() {
+        // Neuer Kontext (Browserwechsel, Recycling): alte Hintergrundseiten sind ungültig
+        browseService.addContextListener(this::reset);
+    }
+
+    /**
+     * Startet das Vorladen, typischerweise direkt nach dem Login.
+     */
+    public synchronized void start() {
+        if (!config.isEnabled() || refresher != null) return;
+
+        browseService.callPlaywright(() -> {
+            for (String url : prefetchUrls()) {
+                pool.putIfAbsent(url, new Slot());
+            }
+            return null;
+        });
+
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bookmark-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, 0, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (refresher != null) refresher.shutdownNow();
+        refresher = null;
+    }
+
+    /**
+     * Navigiert zur URL; ist sie vorgeladen, wird nur die aktive Seite getauscht.
+     *
+     * @return HTML der nun aktiven Seite
+     */
+    public String navigate(String url) {
+        return browseService.callPlaywright(() -> {
+            Slot slot = pool.get(url);
+            if (slot == null || slot.page == null || slot.stale || slot.page.isClosed()) {
+                return browseService.navigateTo(url);
+            }
+
+            Page previous = browseService.activatePage(slot.page, url);
+            // Die bisherige Seite übernimmt den Platz und wird beim nächsten Durchlauf neu geladen
+            slot.page = previous;
+            slot.stale = true;
+            System.out.println("Vorgeladene Seite aktiviert: " + url);
+            return browseService.snapshot();
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Background refresh
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void refresh() {
+        List<String> urls = browseService.callPlaywright(() -> new ArrayList<>(pool.keySet()));
+        long maxAge = config.getRefreshIntervalSeconds() * 1000L;
+
+        for (String url : urls) {
+            try {
+                // Nur bis zum Commit unter der Sperre navigieren, den Rest in kurzen Abschnitten abwarten
+                Page loading = browseService.callPlaywright(() -> {
+                    Slot slot = pool.get(url);
+                    if (slot == null) return null;
+                    if (slot.page == null || slot.page.isClosed()) {
+                        slot.page = browseService.context.newPage();
+                        slot.stale = true;
+                    }
+                    if (!slot.stale && System.currentTimeMillis() - slot.loadedAt <= maxAge) return null;
+                    slot.stale = true; // Bis zum Ende des Ladens nicht aktivieren
+                    slot.page.navigate(url, new Page.NavigateOptions().setWaitUntil(WaitUntilState.COMMIT));
+                    return slot.page;
+                });
+                if (loading != null) awaitLoaded(url, loading);
+            } catch (Exception e) {
+                System.err.println("Vorladen fehlgeschlagen für " + url + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Wartet in Abschnitten von {@link #LOAD_SLICE_MS} auf das Load-Ereignis. Zwischen den Abschnitten ist die
+     * Sperre frei, Navigationen der Oberfläche müssen so höchstens einen Abschnitt warten.
+     */
+    private void awaitLoaded(String url, Page loading) {
+        long deadline = System.currentTimeMillis() + loadTimeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            boolean finished = browseService.callPlaywright(() -> {
+                Slot slot = pool.get(url);
+                // Seite wurde inzwischen aktiviert, ersetzt oder geschlossen
+                if (slot == null || slot.page != loading || loading.isClosed()) return true;
+                try {
+                    loading.waitForLoadState(LoadState.LOAD, new Page.WaitForLoadStateOptions().setTimeout(LOAD_SLICE_MS));
+                } catch (TimeoutError e) {
+                    return false;
+                }
+                slot.loadedAt = System.currentTimeMillis();
+                slot.stale = false;
+                return true;
+            });
+            if (finished) return;
+        }
+        // Bleibt veraltet und wird beim nächsten Durchlauf erneut geladen
+        System.err.println("Vorladen nicht rechtzeitig abgeschlossen: " + url);
+    }
+
+    private void reset(BrowserContext context) {
+        for (Slot slot : pool.values()) {
+            if (slot.page != null && slot.page.context() != context && !slot.page.isClosed()) {
+                try {
+                    slot.page.close();
+                } catch (Exception e) {
+                    // Kontext bereits geschlossen
+                }
+            }
+            slot.page = null;
+            slot.stale = true;
+        }
+    }
+
+    private List<String> prefetchUrls() {
+        List<String> names = config.getBookmarks().isEmpty() ? bookmarkManager.getBookmarkNames() : config.getBookmarks();
+        List<String> urls = new ArrayList<>();
+        for (String name : names) {
+            String url = bookmarkManager.getBookmarkUrlByName(name);
+            if (url != null && !urls.contains(url) && urls.size() < config.getMaxPages()) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    private static class Slot {
+        Page page;
+        boolean stale = true;
+        long loadedAt;
+    }
+}
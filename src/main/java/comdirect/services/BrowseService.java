@@ -1,36 +1,60 @@
 package comdirect.services;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.microsoft.playwright.*;
+import com.microsoft.playwright.options.Cookie;
+import com.microsoft.playwright.options.LoadState;
 import comdirect.config.ComdirectConfig;
 import comdirect.controllers.BrowserUtils;
 import lombok.Getter;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class BrowseService {
     private final ComdirectConfig config;
 
+    private final NetworkArchive networkArchive;
+
+    private final LoadStrategyService loadStrategies;
+
+    private final TraceSampler traceSampler;
+
+    private final SessionJournal journal; // History, Formulare und Downloads, bleibt über Neustarts erhalten
+
+    private final BrowserEventBus eventBus;
+
+    private final PlaywrightBootstrap playwrightBootstrap;
+
     private final String userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/114.0.0.0 Safari/537.36";
 
-    private List<String> history = new ArrayList<>(); // Manuelle History
     @Getter
     private List<Download> downloads = new ArrayList<>();
 
-    private int currentIndex = -1; // Index der aktuellen Seite
-
     private final AtomicInteger downloadsActive = new AtomicInteger(0);
 
+    private final List<Consumer<BrowserContext>> contextListeners = new CopyOnWriteArrayList<>();
+
+    private final List<BiConsumer<String, String>> snapshotListeners = new CopyOnWriteArrayList<>();
+
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////
     /// Var (Stateful Bean, ToDo: Externalize state to a separate class)
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -43,42 +67,185 @@ public class BrowseService {
     public Browser.NewContextOptions contextOptions;
     public Page page;
 
+    private boolean attachedToDaemon; // Browser gehört dem Daemon, nicht dieser Anwendung
+    private boolean resumedPage; // Beim Start wurde eine bereits geöffnete Seite übernommen
+    private boolean daemonLaunched;
+
+    private String browserUserAgent; // User-Agent des aktuellen Kontexts, wird beim ersten Zugriff gelesen
+
+    private final Set<Page> wiredPages = Collections.newSetFromMap(new WeakHashMap<>()); // Siehe wirePage
+
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     /// Construction & TearDown
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    public BrowseService(ComdirectConfig config) {
+    public BrowseService(ComdirectConfig config, NetworkArchive networkArchive, LoadStrategyService loadStrategies,
+                         TraceSampler traceSampler, SessionJournal journal, BrowserEventBus eventBus,
+                         PlaywrightBootstrap playwrightBootstrap) {
         this.config = config;
+        this.networkArchive = networkArchive;
+        this.loadStrategies = loadStrategies;
+        this.traceSampler = traceSampler;
+        this.journal = journal;
+        this.eventBus = eventBus;
+        this.playwrightBootstrap = playwrightBootstrap;
         initPlaywright();
     }
 
     public void initPlaywright() {
-        // Playwright initialisieren
-        playwright = Playwright.create();
+        // Playwright initialisieren (Treiber und Browser aus dem Cache, falls gültig)
+        playwright = playwrightBootstrap.create();
+        if (config.getBrowser().getDaemon().isEnabled() && attachToDaemon()) {
+            return;
+        }
         browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(config.getBrowser().isHeadless()));
         initBrowser();
     }
 
     private void initBrowser() {
+        initBrowser(null);
+    }
+
+    /**
+     * @param storageState Optionaler Storage-State (Cookies, LocalStorage) als JSON, z. B. beim Recycling
+     */
+    private void initBrowser(String storageState) {
         // Browser-Kontext und Seite erstellen
         contextOptions = new Browser.NewContextOptions();
         contextOptions.setAcceptDownloads(config.getBrowser().isAllowDownloads());
-        context = browser.newContext();
-        page = context.newPage();
-        applyDownloadSettings();
+        if (storageState != null) contextOptions.setStorageState(storageState);
+        networkArchive.configure(contextOptions);
+        context = browser.newContext(contextOptions);
+        networkArchive.attach(context);
+        setUpContext(context.newPage());
+    }
+
+    private void setUpContext(Page activePage) {
+        browserUserAgent = null;
+        traceSampler.start(context);
+        context.onPage(this::wirePage); // Gilt auch für Hintergrundseiten (Prefetch) und Popups
+        context.pages().forEach(this::wirePage);
+        page = activePage;
+
+        publishEvents(context);
+
+        contextListeners.forEach(listener -> listener.accept(context));
+    }
+
+    /**
+     * Richtet eine Seite des Kontexts ein: Download-Behandlung und Seitenereignisse. Wird für jede Seite genau
+     * einmal ausgeführt, egal ob sie über {@link BrowserContext#onPage} oder beim Tausch der aktiven Seite ankommt.
+     */
+    private void wirePage(Page candidate) {
+        if (!wiredPages.add(candidate)) return;
+        applyDownloadSettings(candidate);
+
+        // Seitenereignisse hängen an jeder Seite, veröffentlicht wird nur für die jeweils aktive Seite
+        candidate.onLoad(loaded -> {
+            if (loaded == page && eventBus.wants(BrowserEvent.PageLoaded.class)) {
+                eventBus.publish(new BrowserEvent.PageLoaded(System.currentTimeMillis(), loaded.url()));
+            }
+        });
+        candidate.onFrameNavigated(frame -> {
+            if (frame.page() == page && eventBus.wants(BrowserEvent.FrameNavigated.class)) {
+                eventBus.publish(new BrowserEvent.FrameNavigated(System.currentTimeMillis(), frame.url(), frame.parentFrame() == null));
+            }
+        });
+    }
+
+    /**
+     * Leitet Playwright-Ereignisse an den {@link BrowserEventBus} weiter. Auf dem Playwright-Thread wird nur das
+     * Ereignis aus lokal vorliegenden Werten erzeugt, und nur, wenn der Typ abonniert ist. Die Seitenereignisse
+     * registriert {@link #wirePage}.
+     */
+    private void publishEvents(BrowserContext context) {
+        // Anfragen aller Seiten des Kontexts (auch Hintergrundseiten)
+        context.onRequest(request -> {
+            if (eventBus.wants(BrowserEvent.RequestStarted.class)) {
+                eventBus.publish(new BrowserEvent.RequestStarted(System.currentTimeMillis(), request.url(),
+                        request.method(), request.resourceType()));
+            }
+        });
+        context.onResponse(response -> {
+            if (eventBus.wants(BrowserEvent.ResponseReceived.class)) {
+                eventBus.publish(new BrowserEvent.ResponseReceived(System.currentTimeMillis(), response.url(), response.status()));
+            }
+        });
+        context.onRequestFailed(request -> {
+            if (eventBus.wants(BrowserEvent.RequestFailed.class)) {
+                eventBus.publish(new BrowserEvent.RequestFailed(System.currentTimeMillis(), request.url(), request.failure()));
+            }
+        });
+        context.onRequestFinished(request -> {
+            if (eventBus.wants(BrowserEvent.RequestFinished.class)) {
+                eventBus.publish(new BrowserEvent.RequestFinished(System.currentTimeMillis(), request.url()));
+            }
+        });
+    }
+
+    /**
+     * Registriert einen Listener, der bei jedem neuen Browser-Kontext (Start, Browserwechsel) aufgerufen wird.
+     * Existiert bereits ein Kontext, wird der Listener sofort damit aufgerufen. Bereits offene Seiten liefert
+     * {@link BrowserContext#pages()}, weitere Seiten {@link BrowserContext#onPage}.
+     */
+    public synchronized void addContextListener(Consumer<BrowserContext> listener) {
+        contextListeners.add(listener);
+        if (context != null) listener.accept(context);
+    }
 
-        page.onLoad((page) -> System.out.println("Seite geladen: " + page.url()));
-        page.onFrameNavigated((frame) -> System.out.println("Frame navigiert: " + frame.url()));
-//        page.onRequest((request) -> System.out.println("Anfrage: " + request.url()));
-//        page.onResponse((response) -> System.out.println("Antwort: " + response.url()));
-//        page.onRequestFailed((request) -> System.out.println("Anfrage fehlgeschlagen: " + request.url()));
-//        page.onRequestFinished((request) -> System.out.println("Anfrage beendet: " + request.url()));
+    /**
+     * Registriert einen Listener, der nach jeder Navigation (auch Zurück, Vor, Aktualisieren, Formular, Login) mit
+     * URL und HTML der angezeigten Seite aufgerufen wird. Er läuft auf dem Playwright-Thread und darf nicht
+     * blockieren; aufwendige Verarbeitung gehört in einen eigenen Thread.
+     */
+    public void addSnapshotListener(BiConsumer<String, String> listener) {
+        snapshotListeners.add(listener);
+    }
 
+    /**
+     * Liest das HTML der aktiven Seite und gibt es an die Snapshot-Listener weiter.
+     */
+    public synchronized String snapshot() {
+        String html = page.content();
+        String url = page.url();
+        snapshotListeners.forEach(listener -> listener.accept(url, html));
+        return html;
     }
 
-    private void applyDownloadSettings() {
+    /**
+     * Liefert die Cookies des Browser-Kontexts für eine URL als Wert eines Cookie-Headers, damit HTTP-Abfragen
+     * außerhalb von Playwright (z. B. {@code PseudoBrowser.streamWebsite}) in derselben Session laufen.
+     *
+     * @return {@code name=wert; name2=wert2} oder ein leerer String
+     */
+    public synchronized String cookieHeader(String url) {
+        return cookieHeader(context, url);
+    }
+
+    /**
+     * Wie {@link #cookieHeader(String)}, aber für einen beliebigen Browser-Kontext.
+     */
+    public synchronized String cookieHeader(BrowserContext context, String url) {
+        if (context == null) return "";
+        StringBuilder header = new StringBuilder();
+        for (Cookie cookie : context.cookies(url)) {
+            if (header.length() > 0) header.append("; ");
+            header.append(cookie.name).append('=').append(cookie.value);
+        }
+        return header.toString();
+    }
+
+    /**
+     * @return User-Agent, mit dem der Browser-Kontext tatsächlich anfragt (für Abfragen außerhalb von Playwright)
+     */
+    public synchronized String getUserAgent() {
+        if (browserUserAgent == null) browserUserAgent = (String) page.evaluate("() => navigator.userAgent");
+        return browserUserAgent;
+    }
+
+    private void applyDownloadSettings(Page page) {
             // Warte auf den Download
             page.onDownload(download -> {
                 try {
@@ -92,9 +259,11 @@ public class BrowseService {
                         Path downloadPath = Paths.get(config.getBrowser().getDownloadFolder() + download.suggestedFilename());
                         download.saveAs(downloadPath);
                         System.out.println("Download abgeschlossen: " + downloadPath);
+                        journal.recordDownload(download.url(), downloadPath.toString());
                     } else {
                         Path downloadPath = download.path();
                         System.out.println("Datei wurde gespeichert unter: " + downloadPath);
+                        journal.recordDownload(download.url(), String.valueOf(downloadPath));
                     }
                 }
                 catch (Exception e) {
@@ -106,69 +275,243 @@ public class BrowseService {
             });
     }
 
+    /**
+     * Ersetzt Kontext und Seite durch neue Instanzen, um den Speicher des Renderers freizugeben. Cookies und
+     * LocalStorage werden übernommen (kein erneuter Login), die aktuelle URL wird wieder geladen.
+     * SessionStorage und Hintergrundseiten gehen dabei verloren.
+     */
+    public synchronized void recycleContext() {
+        String url = page.url();
+
+        if (attachedToDaemon) {
+            // Der Standardkontext des Daemons lässt sich nicht schließen: nur die Seiten ersetzen
+            List<Page> oldPages = new ArrayList<>(context.pages());
+            Page fresh = context.newPage();
+            wirePage(fresh); // Wie in setUpContext: Downloads und Seitenereignisse
+            page = fresh;
+            oldPages.forEach(Page::close);
+        } else {
+            String storageState = context.storageState();
+            context.close();
+            networkArchive.finish();
+            initBrowser(storageState); // Neuer Kontext zeichnet in eine eigene HAR-Datei auf
+        }
+
+        if (url != null && url.startsWith("http")) {
+            page.navigate(url, loadStrategies.navigateOptions(url));
+            loadStrategies.awaitReady(page, url);
+        }
+        System.out.println("Browser-Kontext recycelt, Seite wiederhergestellt: " + url);
+    }
+
+    public int getActiveDownloads() {
+        return downloadsActive.get();
+    }
+
     /**
      * Cleanup method to close the Playwright browser and context. Avoids memory leaks.
      */
     @PreDestroy
     public void cleanUp() {
+        if (attachedToDaemon) {
+            // Nur die Verbindung trennen, Browser, Kontext und Seiten laufen im Daemon weiter
+            if (playwright != null) playwright.close();
+            return;
+        }
         if (page != null) page.close();
         if (context != null) context.close();
+        networkArchive.finish(); // HAR wird erst beim Schließen des Kontexts geschrieben
         if (browser != null) browser.close();
         if (playwright != null) playwright.close();
     }
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    /// Playwright Interactions
+    /// Browser daemon
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    /// @param url
 
-    public String navigateToAndCloseCookieBanner(String url) {
-        navigateTo(url);
+    /**
+     * Verbindet sich per CDP mit einem langlebigen Chromium und übernimmt dessen Standardkontext samt geöffneter
+     * Seite. Läuft am Endpunkt kein Browser, wird er (falls konfiguriert) als eigenständiger Prozess gestartet,
+     * der das Beenden der Anwendung überlebt. Cookies liegen im Profil des Daemons, ein Neustart der Anwendung
+     * findet die Seite daher eingeloggt wieder vor.
+     * <p>
+     * Im Standardkontext gelten keine Kontextoptionen: HAR-Aufzeichnung/-Wiedergabe und die Download-Freigabe
+     * stehen in diesem Modus nicht zur Verfügung.
+     * <p>
+     * Der Debug-Port ist nicht authentifiziert, jeder lokale Prozess kann den eingeloggten Browser steuern. Verbunden
+     * wird daher nicht mit dem erstbesten Browser am Endpunkt, sondern nur mit dem, der das konfigurierte Profil
+     * verwendet (siehe {@link #daemonEndpoint}).
+     *
+     * @return false, wenn keine Verbindung möglich ist (es wird dann wie gewohnt ein eigener Browser gestartet)
+     */
+    private boolean attachToDaemon() {
+        ComdirectConfig.DaemonConfig daemon = config.getBrowser().getDaemon();
+        long start = System.currentTimeMillis();
+        try {
+            browser = connectToDaemon(daemon);
+        } catch (PlaywrightException e) {
+            if (!daemon.isLaunchIfMissing()) {
+                System.err.println("Browser-Daemon nicht erreichbar: " + daemon.getCdpEndpoint());
+                return false;
+            }
+            try {
+                launchDaemon(daemon);
+                browser = connectToDaemon(daemon);
+            } catch (Exception launchError) {
+                System.err.println("Browser-Daemon konnte nicht gestartet werden: " + launchError.getMessage());
+                return false;
+            }
+        }
+        attachedToDaemon = true;
 
-        // Cookie-Banner schließen (falls sichtbar)
-        BrowserUtils.closeCookieBanner(page);
+        if (browser.contexts().isEmpty()) {
+            initBrowser();
+        } else {
+            context = browser.contexts().get(0);
+            Page existing = context.pages().stream()
+                    .filter(candidate -> candidate.url().startsWith("http"))
+                    .findFirst()
+                    .orElse(null);
+            resumedPage = existing != null;
+            setUpContext(existing != null ? existing : context.newPage());
+        }
+        System.out.println("Mit Browser-Daemon verbunden nach " + (System.currentTimeMillis() - start) + " ms"
+                + (resumedPage ? ", übernehme Seite: " + page.url() : "."));
+        return true;
+    }
 
-        // Warte, bis die Seite vollständig geladen ist
-        page.waitForLoadState();
+    private Browser connectToDaemon(ComdirectConfig.DaemonConfig daemon) {
+        long deadline = System.currentTimeMillis() + daemon.getConnectTimeoutMs();
+        while (true) {
+            try {
+                return playwright.chromium().connectOverCDP(daemonEndpoint(daemon),
+                        new BrowserType.ConnectOverCDPOptions().setTimeout(daemon.getConnectTimeoutMs()));
+            } catch (PlaywrightException e) {
+                // Ein frisch gestarteter Browser öffnet den Debug-Port erst nach einigen hundert Millisekunden
+                if (!daemonLaunched || System.currentTimeMillis() > deadline) throw e;
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
 
-        addToHistory(url);
+    /**
+     * Ermittelt den WebSocket-Endpunkt des Browsers, der das Profil des Daemons verwendet. Chromium schreibt Port und
+     * Pfad (mit zufälliger Browser-ID) beim Öffnen des Debug-Ports in {@code DevToolsActivePort} im Profil. Ein
+     * anderer Browser am selben Port kennt diese ID nicht, die Verbindung schlägt dann fehl.
+     *
+     * @throws PlaywrightException wenn im Profil kein aktiver Debug-Port eingetragen ist
+     */
+    private static String daemonEndpoint(ComdirectConfig.DaemonConfig daemon) {
+        Path activePort = Path.of(daemon.getUserDataDir()).resolve("DevToolsActivePort");
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(activePort);
+        } catch (IOException e) {
+            throw new PlaywrightException("Kein Browser-Daemon mit Profil " + activePort.getParent().toAbsolutePath());
+        }
+        if (lines.size() < 2 || !lines.get(1).startsWith("/devtools/browser/")) {
+            throw new PlaywrightException("Ungültige Datei " + activePort.toAbsolutePath());
+        }
+        String host = URI.create(daemon.getCdpEndpoint()).getHost();
+        return "ws://" + (host != null ? host : "127.0.0.1") + ":" + lines.get(0).trim() + lines.get(1).trim();
+    }
 
-        // HTML der Seite extrahieren und in der WebView anzeigen
-        return page.content();
+    private void launchDaemon(ComdirectConfig.DaemonConfig daemon) throws IOException {
+        int port = URI.create(daemon.getCdpEndpoint()).getPort();
+        List<String> command = new ArrayList<>(List.of(
+                playwright.chromium().executablePath(),
+                "--remote-debugging-port=" + (port > 0 ? port : 9222),
+                "--user-data-dir=" + Path.of(daemon.getUserDataDir()).toAbsolutePath(),
+                "--no-first-run",
+                "--no-default-browser-check"));
+        if (config.getBrowser().isHeadless()) command.add("--headless=new");
+
+        new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        daemonLaunched = true;
+        System.out.println("Browser-Daemon gestartet: " + daemon.getCdpEndpoint());
     }
 
-    public String performLogin(String username, String password) {
-        // Warte, bis die Login-Seite vollständig geladen ist
-        page.waitForLoadState();
+    /**
+     * @return true, wenn beim Start eine bereits geladene Seite des Daemons übernommen wurde
+     */
+    public boolean isResumedPage() {
+        return resumedPage;
+    }
+
+    /**
+     * Übernimmt die beim Start vorgefundene Seite in die History, ohne sie neu zu laden.
+     *
+     * @return HTML der Seite
+     */
+    public synchronized String resumePage() {
+        addToHistory(page.url(), 0);
+        return snapshot();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Playwright Interactions
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// @param url
 
-        // Benutzername und Passwort eingeben
-        page.fill("input[name='loginForm:userName']", username);
-        page.fill("input[name='loginForm:pin']", password);
+    public synchronized String navigateToAndCloseCookieBanner(String url) {
+        navigateTo(url); // Legt auch den History-Eintrag an
 
-        // Login-Button klicken
-        page.click("button[type='submit']");
+        // Cookie-Banner schließen (falls sichtbar)
+        BrowserUtils.closeCookieBanner(page);
 
-        // Warte, bis die Seite vollständig geladen ist
-        page.waitForLoadState();
+        // Warte, bis das DOM nach dem Schließen des Banners bereit ist (der Rest wurde bereits in navigateTo abgewartet)
+        page.waitForLoadState(LoadState.DOMCONTENTLOADED);
 
         // HTML der Seite extrahieren und in der WebView anzeigen
-        return page.content();
+        return snapshot();
+    }
+
+    public synchronized String performLogin(String username, String password) {
+        // Benutzername und PIN stehen im Trace im Klartext: nie speichern
+        return traceSampler.sample(context, "login", true, () -> {
+            // Warte, bis die Login-Seite bereit ist und das Formular angezeigt wird
+            loadStrategies.awaitReady(page, page.url());
+            page.waitForSelector("input[name='loginForm:userName']");
+
+            // Benutzername und Passwort eingeben und Login-Button klicken (ein Roundtrip)
+            List<FormAction.Result> results = submitForm(List.of(
+                    FormAction.fill("input[name='loginForm:userName']", username),
+                    FormAction.fill("input[name='loginForm:pin']", password),
+                    FormAction.click("button[type='submit']")));
+            if (results.stream().anyMatch(result -> !result.success())) {
+                throw new IllegalStateException("Login-Formular konnte nicht ausgefüllt werden.");
+            }
+
+            // HTML der Seite extrahieren und in der WebView anzeigen
+            return snapshot();
+        });
     }
 
-    public String navigateTo(String url) {
+    public synchronized String navigateTo(String url) {
         int downloadCount = downloadsActive.get();
+        long start = System.currentTimeMillis();
         try {
-            // Navigiere zur URL
-            page.navigate(url);
+            return traceSampler.sample(context, "navigate " + url, () -> {
+                // Navigiere zur URL
+                page.navigate(url, loadStrategies.navigateOptions(url));
 
-            // Warte, bis die Seite vollständig geladen ist
-            page.waitForLoadState();
+                // Warte, bis die Seite nach der Strategie für diese URL bereit ist
+                loadStrategies.awaitReady(page, url);
 
-            addToHistory(url);
+                addToHistory(url, System.currentTimeMillis() - start);
 
-            // Gebe den HTML-Inhalt zurück
-            return page.content();
+                // Gebe den HTML-Inhalt zurück
+                return snapshot();
+            });
         } catch (Exception e) {
             // Prüfe, ob ein Download aktiv ist, und ignoriere Fehler in diesem Fall
             if (downloadsActive.get() >= downloadCount) {
@@ -182,57 +525,143 @@ public class BrowseService {
     }
 
 
-    public String navigateBack() {
-        if (currentIndex > 0) {
-            currentIndex--;
-            page.navigate(history.get(currentIndex));
-            page.waitForLoadState();
-            return page.content(); // HTML der alten Seite
+    public synchronized String navigateBack() {
+        String url = journal.back();
+        if (url != null) {
+            return traceSampler.sample(context, "back " + url, () -> {
+                page.navigate(url, loadStrategies.navigateOptions(url));
+                loadStrategies.awaitReady(page, url);
+                return snapshot(); // HTML der alten Seite
+            });
         }
         throw new IllegalStateException("Keine vorherige Seite verfügbar");
     }
 
-    public String navigateForward() {
-        if (currentIndex < history.size() - 1) {
-            currentIndex++;
-            page.navigate(history.get(currentIndex));
-            page.waitForLoadState();
-            return page.content(); // HTML der nächsten Seite
+    public synchronized String navigateForward() {
+        String url = journal.forward();
+        if (url != null) {
+            return traceSampler.sample(context, "forward " + url, () -> {
+                page.navigate(url, loadStrategies.navigateOptions(url));
+                loadStrategies.awaitReady(page, url);
+                return snapshot(); // HTML der nächsten Seite
+            });
         }
         throw new IllegalStateException("Keine nächste Seite verfügbar");
     }
 
-    private void addToHistory(String url) {
-        if (currentIndex < history.size() - 1) {
-            // Entferne alle zukünftigen Einträge, wenn wir in der Mitte des Verlaufs sind
-            history = new ArrayList<>(history.subList(0, currentIndex + 1));
-        }
-        history.add(url);
-        currentIndex = history.size() - 1; // Setze den Index auf das Ende der Historie
+    private void addToHistory(String url, long durationMillis) {
+        // Einträge nach der aktuellen Position verwirft das Journal selbst
+        journal.recordNavigation(url, durationMillis);
     }
 
-    public String postForm(String formDataJson) {
-        // Deserialisiere das JSON (formDataJson) und fülle Playwright-Formulare
-        Map<String, String> formData = new Gson().fromJson(formDataJson, new TypeToken<Map<String, String>>() {}.getType());
-        for (Map.Entry<String, String> entry : formData.entrySet()) {
-            page.fill("input[name='" + entry.getKey() + "']", entry.getValue());
-        }
+    /**
+     * @return Zuletzt angezeigte URL der vorherigen Sitzung (bzw. aktuelle Position der History) oder null
+     */
+    public String getLastSessionUrl() {
+        return journal.currentUrl();
+    }
 
-        // Formular abschicken (z. B. durch einen Submit-Button-Klick)
-        page.click("button[type='submit']"); // ToDo: Fix this
+    /**
+     * Lädt die aktuelle Position der History erneut, ohne einen neuen Eintrag anzulegen (z. B. nach dem Start).
+     */
+    public synchronized String restoreLastPage() {
+        String url = journal.currentUrl();
+        if (url == null) throw new IllegalStateException("Keine Seite aus der letzten Sitzung vorhanden");
+        return traceSampler.sample(context, "restore " + url, () -> {
+            page.navigate(url, loadStrategies.navigateOptions(url));
+            loadStrategies.awaitReady(page, url);
+            return snapshot();
+        });
+    }
 
-        // Warte, bis die Seite vollständig geladen ist
-        page.waitForLoadState();
+    public synchronized String postForm(String formDataJson) {
+        // Felder setzen und das Formular des ersten Felds abschicken
+        Map<String, String> formData = FormBatch.parseFormData(formDataJson);
+        List<FormAction> actions = formData.isEmpty()
+                ? List.of(FormAction.click("button[type='submit']")) // Formular ohne Felder
+                : FormBatch.fromFormData(formData);
+
+        return traceSampler.sample(context, "form " + page.url(), traceSampler.isSensitive(formData.keySet()), () -> {
+            long start = System.currentTimeMillis();
+            submitForm(actions);
+            journal.recordFormPost(page.url(), System.currentTimeMillis() - start);
+
+            // HTML der Seite extrahieren und in der WebView anzeigen
+            return snapshot();
+        });
+    }
 
-        // HTML der Seite extrahieren und in der WebView anzeigen
-        return page.content();
+    /**
+     * Führt alle Schritte in einem einzigen Roundtrip aus. Kann der Batch navigieren (Klick, Absenden), wird auf
+     * die Antwort der Navigation und danach nach der Ladestrategie auf die neue Seite gewartet.
+     *
+     * @return Ergebnis pro Schritt; fehlgeschlagene Schritte werden zusätzlich protokolliert
+     */
+    public synchronized List<FormAction.Result> submitForm(List<FormAction> actions) {
+        List<FormAction.Result> results = new ArrayList<>();
+        if (FormBatch.mayNavigate(actions)) {
+            // Antwort merken, falls sie schon eintrifft, während noch auf den Start der Navigation gewartet wird
+            AtomicReference<Response> navigationResponse = new AtomicReference<>();
+            Consumer<Response> responseListener = candidate -> {
+                if (isDocumentResponse(candidate)) navigationResponse.compareAndSet(null, candidate);
+            };
+            page.onResponse(responseListener);
+            try {
+                Request navigation;
+                try {
+                    navigation = page.waitForRequest(
+                            candidate -> candidate.isNavigationRequest() && candidate.frame() == page.mainFrame(),
+                            new Page.WaitForRequestOptions().setTimeout(loadStrategies.formNavigationStartTimeout()),
+                            () -> results.addAll(FormBatch.execute(page, actions)));
+                } catch (TimeoutError e) {
+                    // Keine Navigation angestoßen (z. B. Validierungsfehler oder Absenden per XHR): aktuellen Stand verwenden
+                    if (results.isEmpty()) throw e;
+                    navigation = null;
+                }
+                if (navigation != null) {
+                    // Navigation läuft: auf deren Antwort warten, eine Zeitüberschreitung ist hier ein Fehler
+                    Response response = navigationResponse.get() != null ? navigationResponse.get()
+                            : page.waitForResponse(this::isDocumentResponse,
+                                    new Page.WaitForResponseOptions().setTimeout(loadStrategies.timeoutFor(navigation.url())),
+                                    () -> {});
+                    loadStrategies.awaitReady(page, response.url());
+                }
+            } finally {
+                page.offResponse(responseListener);
+            }
+        } else {
+            results.addAll(FormBatch.execute(page, actions));
+        }
+
+        for (FormAction.Result result : results) {
+            if (!result.success()) {
+                System.err.println("Formular-Schritt " + result.index() + " fehlgeschlagen (" + result.action().kind() + " "
+                        + result.action().selector() + "): " + result.error());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return true für die endgültige Antwort (keine Weiterleitung) einer Navigation im Hauptframe der aktiven Seite
+     */
+    private boolean isDocumentResponse(Response candidate) {
+        int status = candidate.status();
+        return candidate.request().isNavigationRequest() && candidate.frame() == page.mainFrame()
+                && (status < 300 || status >= 400);
     }
 
-    public void changeBrowser(String browserType) {
+    public synchronized void changeBrowser(String browserType) {
         try {
+            if (context != null && networkArchive.isRecording()) {
+                // Aufzeichnung des alten Kontexts abschließen, bevor der Browser geschlossen wird
+                context.close();
+                networkArchive.finish();
+            }
             if (browser != null) {
-                browser.close();
+                browser.close(); // Bei einem Daemon wird nur die Verbindung getrennt
             }
+            attachedToDaemon = false;
 
             switch (browserType.toLowerCase()) {
                 case "firefox":
@@ -262,10 +691,36 @@ public class BrowseService {
         }
     }
 
-    public String refreshPage() {
-        page.reload();
-        page.waitForLoadState();
-        return page.content();
+    public synchronized String refreshPage() {
+        String url = page.url();
+        return traceSampler.sample(context, "reload " + url, () -> {
+            page.reload(loadStrategies.reloadOptions(url));
+            loadStrategies.awaitReady(page, url);
+            return snapshot();
+        });
+    }
+
+    /**
+     * Macht eine bereits geladene Hintergrundseite desselben Kontexts zur aktiven Seite.
+     *
+     * @param prefetched Geladene Seite
+     * @param url        URL, unter der die Seite in der History erscheint
+     * @return Die bisher aktive Seite (wird nicht geschlossen)
+     */
+    public synchronized Page activatePage(Page prefetched, String url) {
+        Page previous = page;
+        wirePage(prefetched); // In der Regel schon über onPage geschehen, wie in setUpContext
+        page = prefetched;
+        addToHistory(url, 0);
+        return previous;
+    }
+
+    /**
+     * Playwright ist nicht thread-safe. Hintergrund-Dienste führen ihre Aufrufe daher über diese Methode aus,
+     * die über den Monitor des Services mit allen Navigationsmethoden serialisiert ist.
+     */
+    public synchronized <T> T callPlaywright(Supplier<T> action) {
+        return action.get();
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////
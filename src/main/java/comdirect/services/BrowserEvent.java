@@ -0,0 +1,31 @@
+package comdirect.services;
+
+/**
+ * Ereignisse des Browsers, die über den {@link BrowserEventBus} verteilt werden. Sie enthalten nur Werte, die
+ * Playwright bereits lokal vorliegen hat, das Erzeugen kostet auf dem Playwright-Thread keinen Roundtrip.
+ */
+public sealed interface BrowserEvent {
+
+    /**
+     * @return Zeitpunkt des Ereignisses in Millisekunden seit Epoch
+     */
+    long timestamp();
+
+    record PageLoaded(long timestamp, String url) implements BrowserEvent {
+    }
+
+    record FrameNavigated(long timestamp, String url, boolean mainFrame) implements BrowserEvent {
+    }
+
+    record RequestStarted(long timestamp, String url, String method, String resourceType) implements BrowserEvent {
+    }
+
+    record ResponseReceived(long timestamp, String url, int status) implements BrowserEvent {
+    }
+
+    record RequestFailed(long timestamp, String url, String failure) implements BrowserEvent {
+    }
+
+    record RequestFinished(long timestamp, String url) implements BrowserEvent {
+    }
+}
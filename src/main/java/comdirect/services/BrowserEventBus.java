@@ -0,0 +1,150 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Verteilt {@link BrowserEvent}s typisiert an unabhängige Abonnenten (Oberfläche, Metriken, Logging).
+ * <p>
+ * Auf dem Playwright-Thread wird nur das Ereignis erzeugt und in die begrenzte Warteschlange jedes passenden
+ * Abonnenten gelegt; verarbeitet wird auf einem eigenen Thread pro Abonnement. Ist eine Warteschlange voll,
+ * entscheidet die {@link OverflowPolicy}: {@code DROP} verwirft das Ereignis (gezählt), {@code BLOCK} bremst den
+ * Playwright-Thread, bis wieder Platz ist. Über {@link #wants} können Erzeuger prüfen, ob ein Ereignistyp
+ * überhaupt abonniert ist, und sich die Arbeit sonst sparen.
+ */
+@Component
+public class BrowserEventBus {
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    private final ComdirectConfig.EventsConfig config;
+
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    public BrowserEventBus(ComdirectConfig config) {
+        this.config = config.getEvents();
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.forEach(Subscription::close);
+    }
+
+    /**
+     * Abonniert einen Ereignistyp mit Kapazität und Überlaufverhalten aus der Konfiguration.
+     */
+    public <E extends BrowserEvent> Subscription<E> subscribe(String name, Class<E> type, Consumer<? super E> handler) {
+        return subscribe(name, type, handler, config.getQueueCapacity(),
+                OverflowPolicy.valueOf(config.getOverflowPolicy().toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * @param name     Name des Abonnenten (für Thread-Name und Meldungen)
+     * @param type     Ereignistyp, {@code BrowserEvent.class} für alle
+     * @param handler  Wird auf dem Thread des Abonnements aufgerufen
+     * @param capacity Größe der Warteschlange
+     * @param policy   Verhalten bei voller Warteschlange
+     */
+    public <E extends BrowserEvent> Subscription<E> subscribe(String name, Class<E> type, Consumer<? super E> handler,
+                                                             int capacity, OverflowPolicy policy) {
+        Subscription<E> subscription = new Subscription<>(this, name, type, handler, Math.max(1, capacity), policy);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return true, wenn mindestens ein Abonnent Ereignisse dieses Typs erhält
+     */
+    public boolean wants(Class<? extends BrowserEvent> type) {
+        for (Subscription<?> subscription : subscriptions) {
+            if (subscription.type.isAssignableFrom(type)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Legt das Ereignis in die Warteschlangen der passenden Abonnenten. Blockiert nur bei Abonnenten mit
+     * {@link OverflowPolicy#BLOCK} und voller Warteschlange.
+     */
+    public void publish(BrowserEvent event) {
+        for (Subscription<?> subscription : subscriptions) {
+            if (subscription.type.isInstance(event)) subscription.enqueue(event);
+        }
+    }
+
+    public static final class Subscription<E extends BrowserEvent> implements AutoCloseable {
+        private final BrowserEventBus bus;
+        private final String name;
+        private final Class<E> type;
+        private final Consumer<? super E> handler;
+        private final BlockingQueue<E> queue;
+        private final OverflowPolicy policy;
+        private final AtomicLong dropped = new AtomicLong();
+        private final Thread worker;
+        private volatile boolean running = true;
+
+        private Subscription(BrowserEventBus bus, String name, Class<E> type, Consumer<? super E> handler,
+                             int capacity, OverflowPolicy policy) {
+            this.bus = bus;
+            this.name = name;
+            this.type = type;
+            this.handler = handler;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.policy = policy;
+            this.worker = new Thread(this::drain, "browser-events-" + name);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        /**
+         * @return Anzahl der wegen voller Warteschlange verworfenen Ereignisse
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            bus.subscriptions.remove(this);
+            worker.interrupt();
+        }
+
+        private void enqueue(BrowserEvent event) {
+            E typed = type.cast(event);
+            if (policy == OverflowPolicy.BLOCK) {
+                try {
+                    queue.put(typed);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if (!queue.offer(typed) && dropped.incrementAndGet() % 1000 == 1) {
+                System.out.println("Ereignis-Warteschlange von " + name + " voll, bisher " + dropped.get() + " verworfen.");
+            }
+        }
+
+        private void drain() {
+            while (running) {
+                try {
+                    handler.accept(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Fehler im Ereignis-Abonnenten " + name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
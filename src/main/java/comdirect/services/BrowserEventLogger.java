@@ -0,0 +1,47 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Protokolliert Browser-Ereignisse auf der Konsole, als eigener Abonnent des {@link BrowserEventBus}. Die Ausgabe
+ * läuft damit nicht mehr auf dem Playwright-Thread und verzögert auch bei aktiviertem Request-Logging keine Navigation.
+ */
+@Service
+public class BrowserEventLogger {
+    private final BrowserEventBus eventBus;
+
+    private final ComdirectConfig.EventsConfig config;
+
+    public BrowserEventLogger(BrowserEventBus eventBus, ComdirectConfig config) {
+        this.eventBus = eventBus;
+        this.config = config.getEvents();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (config.isLogNavigation()) {
+            eventBus.subscribe("navigation-log", BrowserEvent.PageLoaded.class,
+                    event -> System.out.println("Seite geladen: " + event.url()));
+            eventBus.subscribe("frame-log", BrowserEvent.FrameNavigated.class,
+                    event -> System.out.println("Frame navigiert: " + event.url()));
+        }
+        if (config.isLogRequests()) {
+            eventBus.subscribe("request-log", BrowserEvent.class, this::logRequest);
+        }
+    }
+
+    private void logRequest(BrowserEvent event) {
+        if (event instanceof BrowserEvent.RequestStarted request) {
+            System.out.println("Anfrage: " + request.method() + " " + request.url());
+        } else if (event instanceof BrowserEvent.ResponseReceived response) {
+            System.out.println("Antwort: " + response.status() + " " + response.url());
+        } else if (event instanceof BrowserEvent.RequestFailed failed) {
+            System.out.println("Anfrage fehlgeschlagen: " + failed.url() + " (" + failed.failure() + ")");
+        } else if (event instanceof BrowserEvent.RequestFinished finished) {
+            System.out.println("Anfrage beendet: " + finished.url());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package comdirect.services;
+
+/**
+ * Ein mitgeschnittener WebSocket-Frame oder eine XHR-Antwort.
+ *
+ * @param timestamp Empfangszeit in Millisekunden seit Epoch
+ * @param kind      Herkunft des Frames
+ * @param url       URL des WebSockets bzw. der XHR-Anfrage
+ * @param payload   Textinhalt (Binärframes Base64-kodiert)
+ */
+public record CapturedFrame(long timestamp, Kind kind, String url, String payload) {
+
+    public enum Kind {
+        WEBSOCKET_RECEIVED,
+        WEBSOCKET_SENT,
+        XHR
+    }
+}
@@ -0,0 +1,67 @@
+package comdirect.services;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ein von einem Extraktor gelesener Datensatz (z. B. eine Depotposition).
+ *
+ * @param extractor Name des Extraktors aus der Konfiguration
+ * @param key       Schlüssel des Datensatzes (Schlüsselfeld oder Hash)
+ * @param fields    Feldwerte in Konfigurationsreihenfolge
+ * @param hash      SHA-256 über alle Feldwerte, dient der Änderungserkennung
+ */
+public record ExtractedRecord(String extractor, String key, Map<String, String> fields, String hash) {
+
+    /**
+     * @param fields Feldwerte; fehlende Werte (null) werden als leerer Text übernommen
+     */
+    public static ExtractedRecord of(String extractor, String keyField, Map<String, String> fields) {
+        Map<String, String> values = new LinkedHashMap<>();
+        fields.forEach((name, value) -> values.put(name, value != null ? value : ""));
+        String hash = hash(values);
+        String key = keyField != null && !values.getOrDefault(keyField, "").isEmpty() ? values.get(keyField) : hash;
+        return new ExtractedRecord(extractor, key, Collections.unmodifiableMap(values), hash);
+    }
+
+    public String text(String field) {
+        return fields.get(field);
+    }
+
+    /**
+     * Liest ein Feld als Zahl im deutschen Format (z. B. "1.234,56 EUR").
+     *
+     * @return Der Wert oder null, falls das Feld fehlt oder keine Zahl enthält
+     */
+    public BigDecimal decimal(String field) {
+        String value = fields.get(field);
+        if (value == null) return null;
+        String normalized = value.replaceAll("[^0-9,\\-]", "").replace(',', '.');
+        try {
+            return normalized.isEmpty() ? null : new BigDecimal(normalized);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String hash(Map<String, String> fields) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> entry : fields.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+}
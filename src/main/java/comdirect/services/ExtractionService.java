@@ -0,0 +1,193 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.jsoup.nodes.Element;
+import org.springframework.stereotype.Service;
+import util.PseudoBrowser;
+import util.StreamingHtmlExtractor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Fragt die in {@code comdirect.extractors} konfigurierten Seiten zyklisch ab und meldet nur Änderungen.
+ * <p>
+ * Die Seiten werden per HTTP mit den Session-Cookies und dem User-Agent des Browser-Kontexts geladen (kein
+ * Rendering) und mit dem {@link StreamingHtmlExtractor} direkt aus dem Netzwerkstrom in Datensätze zerlegt. Jeder
+ * Datensatz wird gehasht und mit dem Stand der letzten Abfrage verglichen; Abonnenten erhalten ausschließlich
+ * eingefügte, geänderte und entfernte Datensätze.
+ */
+@Service
+public class ExtractionService {
+    private final BrowseService browseService;
+
+    private final ComdirectConfig config;
+
+    private final PseudoBrowser http = new PseudoBrowser(null); // User-Agent wird pro Abfrage vom Browser übernommen
+
+    private final Map<String, Map<String, ExtractedRecord>> lastRecords = new ConcurrentHashMap<>();
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public ExtractionService(BrowseService browseService, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (config.getExtractors().isEmpty()) return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "extraction-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (ComdirectConfig.ExtractorConfig extractor : config.getExtractors()) {
+            long interval = Math.max(1, extractor.getIntervalSeconds());
+            scheduler.scheduleWithFixedDelay(() -> poll(extractor), interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /**
+     * Abonniert die Änderungen eines Extraktors.
+     *
+     * @param extractorName Name des Extraktors oder null für alle Extraktoren
+     * @param listener      Erhält pro Abfrage die Liste der Änderungen (nie leer), auf dem Poller-Thread
+     */
+    public void subscribe(String extractorName, Consumer<List<RecordDelta>> listener) {
+        subscriptions.add(new Subscription(extractorName, listener));
+    }
+
+    /**
+     * Liefert den zuletzt bekannten Stand eines Extraktors.
+     */
+    public List<ExtractedRecord> getRecords(String extractorName) {
+        return new ArrayList<>(lastRecords.getOrDefault(extractorName, Map.of()).values());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Polling
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void poll(ComdirectConfig.ExtractorConfig extractor) {
+        try {
+            Map<String, ExtractedRecord> current = new LinkedHashMap<>();
+            PseudoBrowser.StreamedPage page = fetch(extractor, current);
+            if (page == null) return;
+
+            boolean redirected = !page.url().equals(extractor.getUrl());
+            if (current.isEmpty() && redirected) {
+                // Umleitung ohne Treffer (z. B. auf die Login-Seite): Stand beibehalten statt alles als entfernt zu melden
+                System.out.println("Extraktor " + extractor.getName() + ": Umleitung auf " + page.url() + ", übersprungen.");
+                return;
+            }
+
+            Map<String, ExtractedRecord> previous = lastRecords.put(extractor.getName(), current);
+            List<RecordDelta> deltas = diff(previous == null ? Map.of() : previous, current);
+            if (!deltas.isEmpty()) publish(extractor.getName(), deltas);
+        } catch (Exception e) {
+            System.err.println("Fehler im Extraktor " + extractor.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lädt die Seite mit den Cookies des Browser-Kontexts und zerlegt sie direkt aus dem Netzwerkstrom. Nur das
+     * Auslesen der Cookies läuft unter dem Monitor von {@link BrowseService}, die Abfrage selbst blockiert keine
+     * Navigation.
+     *
+     * @return Ergebnis der Abfrage oder null bei einem Fehlerstatus
+     */
+    private PseudoBrowser.StreamedPage fetch(ComdirectConfig.ExtractorConfig extractor, Map<String, ExtractedRecord> records) throws Exception {
+        String cookies = browseService.cookieHeader(extractor.getUrl());
+        http.setUserAgent(browseService.getUserAgent());
+
+        StreamingHtmlExtractor rows = new StreamingHtmlExtractor().on(extractor.getRowSelector(), row -> {
+            ExtractedRecord record = ExtractedRecord.of(extractor.getName(), extractor.getKeyField(), readFields(extractor, row));
+            String key = record.key();
+            for (int i = 2; records.containsKey(key); i++) {
+                key = record.key() + "#" + i;
+            }
+            records.put(key, key.equals(record.key()) ? record
+                    : new ExtractedRecord(record.extractor(), key, record.fields(), record.hash()));
+        });
+        PseudoBrowser.StreamedPage page = http.streamWebsite(extractor.getUrl(), cookies, rows);
+        if (page.status() >= 400) {
+            System.err.println("Extraktor-Abfrage fehlgeschlagen (" + page.status() + "): " + extractor.getUrl());
+            return null;
+        }
+        return page;
+    }
+
+    private static Map<String, String> readFields(ComdirectConfig.ExtractorConfig extractor, Element row) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : extractor.getFields().entrySet()) {
+            String selector = field.getValue();
+            String attribute = null;
+            int at = selector.lastIndexOf('@');
+            if (at > 0) {
+                attribute = selector.substring(at + 1);
+                selector = selector.substring(0, at).trim();
+            }
+            Element element = selector.isEmpty() ? row : row.selectFirst(selector);
+            String value = ""; // Kein Treffer: leerer Wert, der Datensatz bleibt erhalten
+            if (element != null) {
+                value = attribute == null ? element.text() : element.absUrl(attribute);
+                if (attribute != null && value.isEmpty()) value = element.attr(attribute);
+            }
+            fields.put(field.getKey(), value);
+        }
+        return fields;
+    }
+
+    private static List<RecordDelta> diff(Map<String, ExtractedRecord> previous, Map<String, ExtractedRecord> current) {
+        List<RecordDelta> deltas = new ArrayList<>();
+        Map<String, ExtractedRecord> remaining = new HashMap<>(previous);
+        for (ExtractedRecord record : current.values()) {
+            ExtractedRecord old = remaining.remove(record.key());
+            if (old == null) {
+                deltas.add(new RecordDelta(RecordDelta.Type.INSERTED, record, null));
+            } else if (!old.hash().equals(record.hash())) {
+                deltas.add(new RecordDelta(RecordDelta.Type.CHANGED, record, old));
+            }
+        }
+        for (ExtractedRecord removed : remaining.values()) {
+            deltas.add(new RecordDelta(RecordDelta.Type.REMOVED, removed, null));
+        }
+        return deltas;
+    }
+
+    private void publish(String extractorName, List<RecordDelta> deltas) {
+        List<RecordDelta> view = List.copyOf(deltas);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.extractorName() == null || subscription.extractorName().equals(extractorName)) {
+                try {
+                    subscription.listener().accept(view);
+                } catch (Exception e) {
+                    System.err.println("Fehler in einem Extraktor-Abonnenten: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private record Subscription(String extractorName, Consumer<List<RecordDelta>> listener) {
+    }
+}
@@ -0,0 +1,52 @@
+package comdirect.services;
+
+/**
+ * Ein Schritt eines Formular-Batches, siehe {@link FormBatch}.
+ *
+ * @param kind     Art des Schritts
+ * @param selector CSS-Selektor des Zielelements
+ * @param value    Wert für FILL und SELECT, "true"/"false" für CHECK, sonst null
+ */
+public record FormAction(Kind kind, String selector, String value) {
+
+    public enum Kind {
+        /** Textfeld setzen; bei Radio-Gruppen wird die Option mit passendem Wert gewählt, bei Checkboxen angehakt */
+        FILL,
+        SELECT,
+        CHECK,
+        CLICK,
+        /** Das Formular des Elements über seinen Absende-Button abschicken (inkl. name=value des Buttons, Validierung und Submit-Handler) */
+        SUBMIT
+    }
+
+    public static FormAction fill(String selector, String value) {
+        return new FormAction(Kind.FILL, selector, value);
+    }
+
+    public static FormAction select(String selector, String value) {
+        return new FormAction(Kind.SELECT, selector, value);
+    }
+
+    public static FormAction check(String selector, boolean checked) {
+        return new FormAction(Kind.CHECK, selector, String.valueOf(checked));
+    }
+
+    public static FormAction click(String selector) {
+        return new FormAction(Kind.CLICK, selector, null);
+    }
+
+    public static FormAction submit(String selector) {
+        return new FormAction(Kind.SUBMIT, selector, null);
+    }
+
+    /**
+     * Ergebnis eines Schritts.
+     *
+     * @param index   Position im Batch
+     * @param action  Ausgeführter Schritt
+     * @param success true, wenn das Element gefunden und gesetzt bzw. geklickt wurde
+     * @param error   Fehlerbeschreibung oder null
+     */
+    public record Result(int index, FormAction action, boolean success, String error) {
+    }
+}
@@ -0,0 +1,175 @@
+package comdirect.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.microsoft.playwright.Page;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Führt eine Folge von Formular-Schritten in einem einzigen {@code page.evaluate} aus, statt jedes Feld einzeln
+ * über den Playwright-Treiber zu setzen (ein Roundtrip statt einem pro Feld).
+ * <p>
+ * Werte werden über den nativen Setter des Elements gesetzt und mit {@code input}- und {@code change}-Events
+ * bekanntgegeben, damit auch Frameworks, die den Wert über Events verfolgen, die Eingabe übernehmen.
+ */
+public final class FormBatch {
+    private static final Gson GSON = new Gson();
+
+    private static final Type FORM_DATA_TYPE = new TypeToken<LinkedHashMap<String, String>>() {}.getType();
+
+    private static final String EXECUTOR = """
+            steps => {
+              const setNative = (el, prop, value) => {
+                const proto = Object.getPrototypeOf(el);
+                const descriptor = Object.getOwnPropertyDescriptor(proto, prop);
+                if (descriptor && descriptor.set) descriptor.set.call(el, value); else el[prop] = value;
+              };
+              const notify = el => {
+                el.dispatchEvent(new Event('input', { bubbles: true }));
+                el.dispatchEvent(new Event('change', { bubbles: true }));
+              };
+              const run = step => {
+                const elements = Array.from(document.querySelectorAll(step.selector));
+                if (elements.length === 0) return 'Element nicht gefunden';
+                const el = elements[0];
+                if (el.disabled) return 'Element deaktiviert';
+                switch (step.kind) {
+                  case 'FILL': {
+                    if (el.type === 'radio') {
+                      const option = elements.find(e => e.value === step.value);
+                      if (!option) return 'Keine Option mit Wert ' + step.value;
+                      setNative(option, 'checked', true);
+                      notify(option);
+                      return null;
+                    }
+                    if (el.type === 'checkbox') {
+                      setNative(el, 'checked', step.value !== '' && step.value !== 'false');
+                      notify(el);
+                      return null;
+                    }
+                    if (el.tagName === 'SELECT') {
+                      setNative(el, 'value', step.value);
+                      notify(el);
+                      return null;
+                    }
+                    el.focus();
+                    setNative(el, 'value', step.value);
+                    notify(el);
+                    el.blur();
+                    return null;
+                  }
+                  case 'SELECT': {
+                    if (el.tagName !== 'SELECT') return 'Kein Auswahlfeld';
+                    const option = Array.from(el.options).find(o => o.value === step.value || o.label === step.value);
+                    if (!option) return 'Keine Option ' + step.value;
+                    setNative(el, 'value', option.value);
+                    notify(el);
+                    return null;
+                  }
+                  case 'CHECK':
+                    setNative(el, 'checked', step.value === 'true');
+                    notify(el);
+                    return null;
+                  case 'CLICK':
+                    el.click();
+                    return null;
+                  case 'SUBMIT': {
+                    const form = el.tagName === 'FORM' ? el : el.form;
+                    if (!form) return 'Kein Formular';
+                    // Mit Absende-Button, damit dessen name=value mitgeschickt wird (JSF erkennt daran die Aktion)
+                    const submitter = el.type === 'submit' ? el
+                        : Array.from(form.elements).find(e => e.type === 'submit' && !e.disabled);
+                    if (form.requestSubmit) form.requestSubmit(submitter || null);
+                    else if (submitter) submitter.click();
+                    else form.submit();
+                    return null;
+                  }
+                  default:
+                    return 'Unbekannter Schritt ' + step.kind;
+                }
+              };
+              return steps.map(step => {
+                try {
+                  return run(step);
+                } catch (e) {
+                  return String(e);
+                }
+              });
+            }
+            """;
+
+    private FormBatch() {
+    }
+
+    /**
+     * Liest die Formulardaten, wie sie die Bridge der WebView schickt (JSON-Objekt Feldname -> Wert).
+     * Die Reihenfolge der Felder bleibt erhalten.
+     *
+     * @throws IllegalArgumentException bei ungültigem JSON
+     */
+    public static Map<String, String> parseFormData(String json) {
+        if (json == null || json.isBlank()) return new LinkedHashMap<>();
+        try {
+            Map<String, String> formData = GSON.fromJson(json, FORM_DATA_TYPE);
+            return formData != null ? formData : new LinkedHashMap<>();
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Ungültige Formulardaten: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Baut aus Formulardaten die Schritte: jedes Feld über seinen Namen setzen, danach das Formular des
+     * ersten Felds über seinen ersten Absende-Button abschicken (wie ein Klick auf den Button).
+     */
+    public static List<FormAction> fromFormData(Map<String, String> formData) {
+        List<FormAction> actions = new ArrayList<>();
+        for (Map.Entry<String, String> entry : formData.entrySet()) {
+            actions.add(FormAction.fill(nameSelector(entry.getKey()), entry.getValue()));
+        }
+        if (!actions.isEmpty()) {
+            actions.add(FormAction.submit(actions.get(0).selector()));
+        }
+        return actions;
+    }
+
+    public static String nameSelector(String name) {
+        return "[name=\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]";
+    }
+
+    /**
+     * @return true, wenn der Batch eine Navigation auslösen kann (Klick oder Absenden)
+     */
+    public static boolean mayNavigate(List<FormAction> actions) {
+        return actions.stream().anyMatch(action -> action.kind() == FormAction.Kind.CLICK || action.kind() == FormAction.Kind.SUBMIT);
+    }
+
+    /**
+     * Führt alle Schritte in einem Aufruf im Hauptframe der Seite aus. Ein fehlgeschlagener Schritt bricht den
+     * Batch nicht ab, sein Fehler steht im Ergebnis.
+     */
+    public static List<FormAction.Result> execute(Page page, List<FormAction> actions) {
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (FormAction action : actions) {
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("kind", action.kind().name());
+            step.put("selector", action.selector());
+            step.put("value", action.value() != null ? action.value() : "");
+            steps.add(step);
+        }
+
+        List<?> errors = (List<?>) page.evaluate(EXECUTOR, steps);
+
+        List<FormAction.Result> results = new ArrayList<>();
+        for (int i = 0; i < actions.size(); i++) {
+            Object error = i < errors.size() ? errors.get(i) : "Kein Ergebnis";
+            results.add(new FormAction.Result(i, actions.get(i), error == null, error != null ? String.valueOf(error) : null));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,229 @@
+package comdirect.services;
+
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.TimeoutError;
+import com.microsoft.playwright.options.LoadState;
+import com.microsoft.playwright.options.WaitForSelectorState;
+import com.microsoft.playwright.options.WaitUntilState;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Entscheidet pro URL, worauf nach einer Navigation gewartet wird, statt immer auf das LOAD-Event.
+ * <p>
+ * Feste Strategien ({@code domcontentloaded}, {@code load}, {@code networkidle}, {@code selector}) werden über
+ * Regeln auf URL-Muster konfiguriert. Im Modus {@code adaptive} wird in Lernläufen nacheinander auf
+ * DOMCONTENTLOADED, LOAD und NETWORKIDLE gewartet und jeweils eine Signatur des sichtbaren Inhalts verglichen.
+ * Der früheste Zustand, ab dem sich der Inhalt nicht mehr geändert hat, reicht für diese Seite aus; nach
+ * {@code learningRuns} übereinstimmenden Beobachtungen wird nur noch darauf gewartet, jede
+ * {@code reverifyEvery}-te Navigation lernt erneut.
+ */
+@Component
+public class LoadStrategyService {
+    private static final String CONTENT_SIGNATURE = "() => document.body"
+            + " ? document.body.innerText.length + ':' + document.getElementsByTagName('*').length : ''";
+
+    private static final double LEARNING_NETWORK_IDLE_TIMEOUT_MS = 5000;
+
+    private static final List<LoadState> READINESS_ORDER = List.of(LoadState.DOMCONTENTLOADED, LoadState.LOAD, LoadState.NETWORKIDLE);
+
+    private final ComdirectConfig.LoadStrategyConfig config;
+
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    private final Map<String, Learned> learned = new ConcurrentHashMap<>();
+
+    public LoadStrategyService(ComdirectConfig config) {
+        this.config = config.getLoadStrategy();
+    }
+
+    /**
+     * Optionen für {@code page.navigate}: Es wird nur bis zum Commit gewartet, den Rest übernimmt {@link #awaitReady}.
+     */
+    public Page.NavigateOptions navigateOptions(String url) {
+        return new Page.NavigateOptions()
+                .setWaitUntil(WaitUntilState.COMMIT)
+                .setTimeout(timeoutFor(ruleFor(url)));
+    }
+
+    public Page.ReloadOptions reloadOptions(String url) {
+        return new Page.ReloadOptions()
+                .setWaitUntil(WaitUntilState.COMMIT)
+                .setTimeout(timeoutFor(ruleFor(url)));
+    }
+
+    /**
+     * @return Für die URL konfigurierter Timeout (Regel oder {@code defaultTimeoutMs}) in Millisekunden
+     */
+    public double timeoutFor(String url) {
+        return timeoutFor(ruleFor(url));
+    }
+
+    /**
+     * @return So lange darf ein Formular brauchen, bis es eine Navigation anstößt, in Millisekunden
+     */
+    public double formNavigationStartTimeout() {
+        return config.getFormNavigationStartMs();
+    }
+
+    /**
+     * Wartet, bis die Seite nach der für die URL konfigurierten bzw. gelernten Strategie bereit ist. Zeitüberschreitungen
+     * werden protokolliert, die Seite wird dann im aktuellen Zustand verwendet.
+     */
+    public void awaitReady(Page page, String url) {
+        ComdirectConfig.LoadRule rule = ruleFor(url);
+        String strategy = (rule != null && rule.getStrategy() != null ? rule.getStrategy() : config.getDefaultStrategy())
+                .toLowerCase(Locale.ROOT);
+        double timeout = timeoutFor(rule);
+        long start = System.currentTimeMillis();
+
+        try {
+            switch (strategy) {
+                case "domcontentloaded" -> waitFor(page, LoadState.DOMCONTENTLOADED, timeout);
+                case "networkidle" -> waitFor(page, LoadState.NETWORKIDLE, timeout);
+                case "selector" -> {
+                    waitFor(page, LoadState.DOMCONTENTLOADED, timeout);
+                    if (rule != null && rule.getSelector() != null) {
+                        page.waitForSelector(rule.getSelector(), new Page.WaitForSelectorOptions()
+                                .setState(WaitForSelectorState.VISIBLE)
+                                .setTimeout(timeout));
+                    }
+                }
+                case "adaptive" -> awaitAdaptive(page, learningKey(url, rule), timeout);
+                default -> waitFor(page, LoadState.LOAD, timeout);
+            }
+        } catch (TimeoutError e) {
+            System.out.println("Zeitüberschreitung beim Warten (" + strategy + ") auf " + url + ", verwende aktuellen Stand.");
+        }
+        System.out.println("Seite bereit (" + strategy + ") nach " + (System.currentTimeMillis() - start) + " ms: " + url);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Adaptive mode
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void awaitAdaptive(Page page, String key, double timeout) {
+        Learned state = learned.computeIfAbsent(key, k -> new Learned());
+        LoadState target = state.target(config.getLearningRuns(), config.getReverifyEvery());
+        if (target == LoadState.NETWORKIDLE) {
+            // Gelernte Netzwerkruhe nur begrenzt abwarten, die Seite ist nach LOAD bereits benutzbar
+            waitFor(page, LoadState.LOAD, timeout);
+            try {
+                waitFor(page, LoadState.NETWORKIDLE, Math.min(timeout, LEARNING_NETWORK_IDLE_TIMEOUT_MS));
+            } catch (TimeoutError e) {
+                // Netzwerk diesmal nicht ruhig geworden: Stand nach LOAD verwenden
+            }
+            return;
+        }
+        if (target != null) {
+            waitFor(page, target, timeout);
+            return;
+        }
+
+        // Lernlauf: Inhalt nach jedem Bereitschaftssignal vergleichen
+        waitFor(page, LoadState.DOMCONTENTLOADED, timeout);
+        String afterDomReady = signature(page);
+        waitFor(page, LoadState.LOAD, timeout);
+        String afterLoad = signature(page);
+        boolean networkIdle;
+        try {
+            waitFor(page, LoadState.NETWORKIDLE, Math.min(timeout, LEARNING_NETWORK_IDLE_TIMEOUT_MS));
+            networkIdle = true;
+        } catch (TimeoutError e) {
+            // Dauerhafte Verbindungen (Polling, WebSocket, Kursticker): Netzwerk wird nie ruhig
+            networkIdle = false;
+        }
+
+        LoadState sufficient;
+        if (networkIdle) {
+            String afterNetworkIdle = signature(page);
+            sufficient = afterDomReady.equals(afterNetworkIdle) ? LoadState.DOMCONTENTLOADED
+                    : afterLoad.equals(afterNetworkIdle) ? LoadState.LOAD
+                    : LoadState.NETWORKIDLE;
+        } else {
+            // Ohne Netzwerkruhe ist jede spätere Änderung (Ticker) kein Grund für NETWORKIDLE: höchstens LOAD lernen
+            sufficient = afterDomReady.equals(afterLoad) ? LoadState.DOMCONTENTLOADED : LoadState.LOAD;
+        }
+        state.observe(sufficient, config.getLearningRuns());
+        System.out.println("Ladeverhalten gelernt für " + key + ": " + sufficient);
+    }
+
+    private static String signature(Page page) {
+        try {
+            return String.valueOf(page.evaluate(CONTENT_SIGNATURE));
+        } catch (Exception e) {
+            // Kontext während der Auswertung zerstört (weitere Navigation): als Änderung werten
+            return "?" + System.nanoTime();
+        }
+    }
+
+    private static void waitFor(Page page, LoadState state, double timeout) {
+        page.waitForLoadState(state, new Page.WaitForLoadStateOptions().setTimeout(timeout));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private ComdirectConfig.LoadRule ruleFor(String url) {
+        if (url == null) return null;
+        for (ComdirectConfig.LoadRule rule : config.getRules()) {
+            if (rule.getPattern() != null && patterns.computeIfAbsent(rule.getPattern(), Pattern::compile).matcher(url).matches()) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private double timeoutFor(ComdirectConfig.LoadRule rule) {
+        return rule != null && rule.getTimeoutMs() != null ? rule.getTimeoutMs() : config.getDefaultTimeoutMs();
+    }
+
+    /**
+     * Gelernt wird pro Regel bzw. ohne Regel pro Host und Pfad (Query-Parameter wie Session-IDs bleiben außen vor).
+     */
+    private static String learningKey(String url, ComdirectConfig.LoadRule rule) {
+        if (rule != null) return rule.getPattern();
+        try {
+            URI uri = URI.create(url);
+            return uri.getHost() + uri.getPath();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return String.valueOf(url);
+        }
+    }
+
+    private static class Learned {
+        private final Deque<LoadState> observations = new ArrayDeque<>();
+        private int navigations;
+
+        /**
+         * @return Gelernter Zielzustand oder null, wenn (erneut) gelernt werden soll
+         */
+        synchronized LoadState target(int learningRuns, int reverifyEvery) {
+            navigations++;
+            if (observations.size() < learningRuns) return null;
+            if (reverifyEvery > 0 && navigations % reverifyEvery == 0) return null;
+
+            // Der späteste Zustand der letzten Beobachtungen reicht für alle davon
+            LoadState latest = LoadState.DOMCONTENTLOADED;
+            for (LoadState observed : observations) {
+                if (READINESS_ORDER.indexOf(observed) > READINESS_ORDER.indexOf(latest)) latest = observed;
+            }
+            return latest;
+        }
+
+        synchronized void observe(LoadState sufficient, int learningRuns) {
+            observations.addLast(sufficient);
+            while (observations.size() > Math.max(1, learningRuns)) observations.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Begrenzt den Speicherverbrauch des Browsers über einen langen Handelstag.
+ * <p>
+ * Misst zyklisch den Speicher aller Kindprozesse der JVM (Playwright-Treiber und Browser-Prozesse) über
+ * {@code /proc}. Wird das Budget überschritten, recycelt der Governor Kontext und Seite, sobald eine Weile
+ * keine Netzwerkaktivität stattgefunden hat und kein Download läuft. Gemessen wird PSS (anteilig geteilter
+ * Speicher, sonst würden die gemeinsam genutzten Seiten der Chromium-Prozesse mehrfach gezählt), RSS dient
+ * als Fallback.
+ */
+@Service
+public class MemoryGovernor {
+    private static final Path PROC = Path.of("/proc");
+
+    private final BrowseService browseService;
+
+    private final SessionKeepAliveService sessionService;
+
+    private final PdfExportService pdfExport;
+
+    private final ComdirectConfig.MemoryConfig config;
+
+    private volatile long lastSampleBytes;
+
+    private volatile int recycleCount;
+
+    private ScheduledExecutorService sampler;
+
+    public MemoryGovernor(BrowseService browseService, SessionKeepAliveService sessionService,
+                          PdfExportService pdfExport, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.sessionService = sessionService;
+        this.pdfExport = pdfExport;
+        this.config = config.getMemory();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) return;
+        if (!Files.isDirectory(PROC)) {
+            System.out.println("Speicher-Governor deaktiviert: /proc nicht verfügbar.");
+            return;
+        }
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-governor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(5, config.getSampleIntervalSeconds());
+        sampler.scheduleWithFixedDelay(this::sample, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) sampler.shutdownNow();
+    }
+
+    /**
+     * Speicher der Browser-Prozesse bei der letzten Messung in Bytes.
+     */
+    public long getLastSampleBytes() {
+        return lastSampleBytes;
+    }
+
+    public int getRecycleCount() {
+        return recycleCount;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Sampling
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void sample() {
+        try {
+            long bytes = measureChildProcesses();
+            lastSampleBytes = bytes;
+
+            long budget = config.getBudgetMb() * 1024L * 1024L;
+            if (bytes <= budget) return;
+
+            if (pdfExport.isRunning()) {
+                // Gemessen werden auch die Worker des PDF-Exports; Recycling des Hauptkontexts gibt deren Speicher nicht frei
+                System.out.println("Speicherbudget überschritten (" + bytes / (1024 * 1024) + " MB), PDF-Export läuft.");
+                return;
+            }
+            if (!isIdle()) {
+                System.out.println("Speicherbudget überschritten (" + bytes / (1024 * 1024) + " MB), warte auf Leerlauf.");
+                return;
+            }
+
+            System.out.println("Speicherbudget überschritten (" + bytes / (1024 * 1024) + " MB), recycle Browser-Kontext.");
+            browseService.recycleContext();
+            recycleCount++;
+        } catch (Exception e) {
+            System.err.println("Fehler im Speicher-Governor: " + e.getMessage());
+        }
+    }
+
+    private boolean isIdle() {
+        if (browseService.getActiveDownloads() > 0) return false;
+        long lastActivity = sessionService.getLastActivity(browseService.context);
+        if (lastActivity == 0) return false; // Unbekannt (Kontext noch nicht erfasst): nicht als Leerlauf werten
+        return System.currentTimeMillis() - lastActivity >= config.getIdleSeconds() * 1000L;
+    }
+
+    private static long measureChildProcesses() {
+        List<ProcessHandle> children = ProcessHandle.current().descendants().toList();
+        long total = 0;
+        for (ProcessHandle child : children) {
+            total += memoryOf(child.pid());
+        }
+        return total;
+    }
+
+    /**
+     * Liest PSS aus {@code smaps_rollup}, ersatzweise VmRSS aus {@code status} (jeweils in kB).
+     */
+    private static long memoryOf(long pid) {
+        Path processDir = PROC.resolve(String.valueOf(pid));
+        long pss = readKilobytes(processDir.resolve("smaps_rollup"), "Pss:");
+        if (pss >= 0) return pss * 1024;
+        long rss = readKilobytes(processDir.resolve("status"), "VmRSS:");
+        return Math.max(0, rss) * 1024;
+    }
+
+    private static long readKilobytes(Path file, String key) {
+        try {
+            for (String line : Files.readAllLines(file)) {
+                if (line.startsWith(key)) {
+                    String value = line.substring(key.length()).trim();
+                    int space = value.indexOf(' ');
+                    return Long.parseLong(space < 0 ? value : value.substring(0, space));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Prozess beendet oder Datei nicht lesbar
+        }
+        return -1;
+    }
+}
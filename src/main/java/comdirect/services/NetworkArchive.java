@@ -0,0 +1,372 @@
+package comdirect.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Route;
+import com.microsoft.playwright.options.HarContentPolicy;
+import com.microsoft.playwright.options.HarMode;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Zeichnet den Netzwerkverkehr einer Session als HAR-Archiv auf bzw. spielt ihn offline wieder ab.
+ * <p>
+ * Im Modus {@code record} schreibt Playwright das Archiv beim Schließen des Kontexts; jeder Kontext (Start,
+ * Browserwechsel, Recycling) erhält eine eigene Datei mit Zeitstempel neben {@code harPath}. Anschließend werden
+ * Zugangsdaten, Cookies und Tokens unkenntlich gemacht: Header, Cookies, Query-Parameter und Formulardaten sowie in
+ * Text-Bodies (HTML, JSON, Formulare) die Werte der konfigurierten Parameternamen ({@code scrubParams}), z. B.
+ * versteckte Formularfelder. Tokens unter anderen Namen oder in Binär-Bodies bleiben erhalten, das Archiv ist
+ * daher weiterhin vertraulich zu behandeln.
+ * <p>
+ * Im Modus {@code replay} beantwortet ein Route-Handler alle Anfragen aus dem Archiv ({@code harPath} oder, falls
+ * nicht vorhanden, die neueste Aufzeichnung daneben; Schlüssel: Methode + URL ohne geschwärzte Parameterwerte).
+ * Nicht archivierte Anfragen werden abgebrochen, es gibt keinen Netzwerkzugriff. Die aufgezeichnete Server-Latenz
+ * wird nicht nachgestellt: Route-Handler laufen auf dem einen Playwright-Thread, eine Verzögerung dort würde alle
+ * Anfragen nacheinander aufhalten.
+ */
+@Component
+public class NetworkArchive {
+    private static final String SCRUBBED = "***";
+
+    private static final String[] DROPPED_REPLAY_HEADERS = {"content-length", "content-encoding", "transfer-encoding"};
+
+    private static final DateTimeFormatter RECORDING_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final ComdirectConfig.NetworkConfig config;
+
+    private Map<String, Deque<JsonObject>> replayEntries;
+
+    private final Deque<Path> recordings = new ArrayDeque<>(); // Noch nicht geschwärzte Archive
+
+    public NetworkArchive(ComdirectConfig config) {
+        this.config = config.getNetwork();
+    }
+
+    public boolean isRecording() {
+        return "record".equalsIgnoreCase(config.getMode());
+    }
+
+    public boolean isReplaying() {
+        return "replay".equalsIgnoreCase(config.getMode());
+    }
+
+    /**
+     * Ergänzt die Kontext-Optionen um die HAR-Aufzeichnung (nur im Modus {@code record}).
+     */
+    public synchronized void configure(Browser.NewContextOptions options) {
+        if (!isRecording()) return;
+        try {
+            Path harPath = recordingPath();
+            if (harPath.getParent() != null) Files.createDirectories(harPath.getParent());
+            options.setRecordHarPath(harPath)
+                    .setRecordHarContent(HarContentPolicy.EMBED)
+                    .setRecordHarMode(HarMode.FULL);
+            recordings.add(harPath);
+            System.out.println("Netzwerk-Aufzeichnung aktiv: " + harPath.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("HAR-Verzeichnis konnte nicht angelegt werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registriert im Modus {@code replay} den Route-Handler, der alle Anfragen aus dem Archiv beantwortet.
+     */
+    public void attach(BrowserContext context) {
+        if (!isReplaying()) return;
+        if (replayEntries == null) {
+            replayEntries = loadEntries();
+            System.out.println("Netzwerk-Wiedergabe aktiv: " + replayEntries.size() + " URLs aus " + replayPath());
+        }
+        context.route("**/*", this::replay);
+    }
+
+    /**
+     * Muss nach dem Schließen eines aufzeichnenden Kontexts aufgerufen werden, um das Archiv zu schwärzen. Archive
+     * noch offener Kontexte (Datei existiert noch nicht) bleiben vorgemerkt.
+     */
+    public synchronized void finish() {
+        if (!isRecording()) return;
+        for (Iterator<Path> pending = recordings.iterator(); pending.hasNext(); ) {
+            Path harPath = pending.next();
+            if (!Files.exists(harPath)) continue;
+            pending.remove();
+            scrubArchive(harPath);
+        }
+    }
+
+    private void scrubArchive(Path harPath) {
+        try {
+            JsonObject har;
+            try (Reader reader = Files.newBufferedReader(harPath, StandardCharsets.UTF_8)) {
+                har = JsonParser.parseReader(reader).getAsJsonObject();
+            }
+            for (JsonElement entry : entries(har)) {
+                scrubEntry(entry.getAsJsonObject());
+            }
+            try (Writer writer = Files.newBufferedWriter(harPath, StandardCharsets.UTF_8)) {
+                new Gson().toJson(har, writer);
+            }
+            System.out.println("HAR-Archiv gespeichert und geschwärzt: " + harPath.toAbsolutePath());
+        } catch (Exception e) {
+            System.err.println("Fehler beim Schwärzen des HAR-Archivs: " + e.getMessage());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Replay
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void replay(Route route) {
+        String key = key(route.request().method(), route.request().url());
+        Deque<JsonObject> candidates = replayEntries.get(key);
+        if (candidates == null || candidates.isEmpty()) {
+            System.out.println("Nicht im Archiv, abgebrochen: " + key);
+            route.abort();
+            return;
+        }
+
+        // Wiederholte Anfragen erhalten die Antworten in Aufzeichnungsreihenfolge, die letzte bleibt bestehen
+        JsonObject entry = candidates.size() > 1 ? candidates.poll() : candidates.peek();
+        JsonObject response = entry.getAsJsonObject("response");
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (JsonElement header : array(response, "headers")) {
+            String name = header.getAsJsonObject().get("name").getAsString();
+            if (!isDroppedReplayHeader(name)) {
+                headers.merge(name, header.getAsJsonObject().get("value").getAsString(), (a, b) -> a + "\n" + b);
+            }
+        }
+
+        route.fulfill(new Route.FulfillOptions()
+                .setStatus(response.get("status").getAsInt())
+                .setHeaders(headers)
+                .setBodyBytes(body(response)));
+    }
+
+    private Map<String, Deque<JsonObject>> loadEntries() {
+        Map<String, Deque<JsonObject>> entries = new HashMap<>();
+        try (Reader reader = Files.newBufferedReader(replayPath(), StandardCharsets.UTF_8)) {
+            JsonObject har = JsonParser.parseReader(reader).getAsJsonObject();
+            for (JsonElement element : entries(har)) {
+                JsonObject entry = element.getAsJsonObject();
+                JsonObject request = entry.getAsJsonObject("request");
+                String key = key(request.get("method").getAsString(), request.get("url").getAsString());
+                entries.computeIfAbsent(key, k -> new ArrayDeque<>()).add(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("HAR-Archiv konnte nicht gelesen werden: " + e.getMessage());
+        }
+        return entries;
+    }
+
+    private static byte[] body(JsonObject response) {
+        JsonObject content = response.getAsJsonObject("content");
+        if (content == null || !content.has("text")) return new byte[0];
+        String text = content.get("text").getAsString();
+        if (content.has("encoding") && "base64".equals(content.get("encoding").getAsString())) {
+            return Base64.getDecoder().decode(text);
+        }
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isDroppedReplayHeader(String name) {
+        for (String dropped : DROPPED_REPLAY_HEADERS) {
+            if (dropped.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Scrubbing
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void scrubEntry(JsonObject entry) {
+        JsonObject request = entry.getAsJsonObject("request");
+        JsonObject response = entry.getAsJsonObject("response");
+
+        request.addProperty("url", scrubUrl(request.get("url").getAsString()));
+        scrubHeaders(array(request, "headers"));
+        scrubHeaders(array(response, "headers"));
+        scrubAllValues(array(request, "cookies"));
+        scrubAllValues(array(response, "cookies"));
+        scrubConfiguredValues(array(request, "queryString"));
+
+        JsonObject postData = request.getAsJsonObject("postData");
+        if (postData != null) {
+            scrubConfiguredValues(array(postData, "params"));
+            if (postData.has("text")) {
+                postData.addProperty("text", scrubText(postData.get("text").getAsString()));
+            }
+        }
+
+        // Eingebettete Bodies: z. B. Tokens in versteckten Feldern oder JSON-Antworten
+        JsonObject content = response != null ? response.getAsJsonObject("content") : null;
+        if (content != null && content.has("text") && !isBase64(content) && isTextual(content)) {
+            content.addProperty("text", scrubText(content.get("text").getAsString()));
+        }
+    }
+
+    private static boolean isBase64(JsonObject content) {
+        return content.has("encoding") && "base64".equals(content.get("encoding").getAsString());
+    }
+
+    private static boolean isTextual(JsonObject content) {
+        String mimeType = content.has("mimeType") ? content.get("mimeType").getAsString().toLowerCase(Locale.ROOT) : "";
+        return mimeType.startsWith("text/") || mimeType.contains("json") || mimeType.contains("xml")
+                || mimeType.contains("javascript") || mimeType.contains("x-www-form-urlencoded");
+    }
+
+    private void scrubHeaders(JsonArray headers) {
+        for (JsonElement header : headers) {
+            JsonObject object = header.getAsJsonObject();
+            if (containsIgnoreCase(config.getScrubHeaders(), object.get("name").getAsString())) {
+                object.addProperty("value", SCRUBBED);
+            }
+        }
+    }
+
+    private static void scrubAllValues(JsonArray values) {
+        for (JsonElement value : values) {
+            value.getAsJsonObject().addProperty("value", SCRUBBED);
+        }
+    }
+
+    private void scrubConfiguredValues(JsonArray values) {
+        for (JsonElement value : values) {
+            JsonObject object = value.getAsJsonObject();
+            if (containsIgnoreCase(config.getScrubParams(), object.get("name").getAsString())) {
+                object.addProperty("value", SCRUBBED);
+            }
+        }
+    }
+
+    /**
+     * Schwärzt Formular- ({@code name=wert}), JSON- ({@code "name":"wert"}) und HTML-Bodies
+     * ({@code <input name="name" value="wert">}, auch mit {@code value} vor {@code name}).
+     */
+    private String scrubText(String text) {
+        String result = text;
+        String scrubbed = Matcher.quoteReplacement(SCRUBBED);
+        for (String param : config.getScrubParams()) {
+            String encoded = Pattern.quote(URLEncoder.encode(param, StandardCharsets.UTF_8));
+            String plain = Pattern.quote(param);
+            result = result.replaceAll("(^|&)(" + encoded + "|" + plain + ")=[^&]*", "$1$2=" + scrubbed);
+            result = result.replaceAll("(\"" + plain + "\"\\s*:\\s*)\"[^\"]*\"", "$1\"" + scrubbed + "\"");
+            result = result.replaceAll("(?i)(<[^>]*\\sname\\s*=\\s*[\"']" + plain + "[\"'][^>]*\\svalue\\s*=\\s*)([\"'])[^\"']*\\2",
+                    "$1$2" + scrubbed + "$2");
+            result = result.replaceAll("(?i)(<[^>]*\\svalue\\s*=\\s*)([\"'])[^\"']*\\2([^>]*\\sname\\s*=\\s*[\"']" + plain + "[\"'])",
+                    "$1$2" + scrubbed + "$2$3");
+        }
+        return result;
+    }
+
+    /**
+     * Ersetzt die Werte geschwärzter Query-Parameter; wird auch beim Abspielen für den Abgleich genutzt.
+     */
+    private String scrubUrl(String url) {
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) return url;
+
+        int fragmentStart = url.indexOf('#', queryStart);
+        String query = fragmentStart < 0 ? url.substring(queryStart + 1) : url.substring(queryStart + 1, fragmentStart);
+        StringBuilder scrubbed = new StringBuilder(url.substring(0, queryStart + 1));
+        String[] pairs = query.split("&", -1);
+        for (int i = 0; i < pairs.length; i++) {
+            if (i > 0) scrubbed.append('&');
+            String[] keyValue = pairs[i].split("=", 2);
+            String name = URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8);
+            if (keyValue.length == 2 && containsIgnoreCase(config.getScrubParams(), name)) {
+                scrubbed.append(keyValue[0]).append('=').append(SCRUBBED);
+            } else {
+                scrubbed.append(pairs[i]);
+            }
+        }
+        return scrubbed.toString();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private String key(String method, String url) {
+        String withoutFragment = url.contains("#") ? url.substring(0, url.indexOf('#')) : url;
+        return method.toUpperCase(Locale.ROOT) + " " + scrubUrl(withoutFragment);
+    }
+
+    private Path harPath() {
+        return Path.of(config.getHarPath());
+    }
+
+    /**
+     * Eigene Datei pro Kontext, z. B. {@code sessions/session-20240131-174501-123.har}.
+     */
+    private Path recordingPath() {
+        Path harPath = harPath();
+        String name = harPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : ".har";
+        return harPath.resolveSibling(base + "-" + LocalDateTime.now().format(RECORDING_SUFFIX) + extension);
+    }
+
+    /**
+     * {@code harPath}, falls vorhanden, sonst die neueste Aufzeichnung daneben.
+     */
+    private Path replayPath() {
+        Path harPath = harPath();
+        if (Files.exists(harPath)) return harPath;
+        String name = harPath.getFileName().toString();
+        String base = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        Path directory = harPath.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(base + "-"))
+                    .max(Comparator.comparing(file -> file.getFileName().toString()))
+                    .orElse(harPath);
+        } catch (IOException e) {
+            return harPath;
+        }
+    }
+
+    private static JsonArray entries(JsonObject har) {
+        return har.getAsJsonObject("log").getAsJsonArray("entries");
+    }
+
+    private static JsonArray array(JsonObject object, String name) {
+        return object != null && object.has(name) && object.get(name).isJsonArray() ? object.getAsJsonArray(name) : new JsonArray();
+    }
+
+    private static boolean containsIgnoreCase(Iterable<String> values, String value) {
+        for (String candidate : values) {
+            if (candidate.equalsIgnoreCase(value)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,274 @@
+package comdirect.services;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Response;
+import com.microsoft.playwright.WebSocket;
+import com.microsoft.playwright.WebSocketFrame;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Service;
+import util.RingBuffer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Schneidet WebSocket-Frames und ausgewählte XHR-Antworten der Seiten mit (z. B. Kurse und Orderstatus im
+ * ProTrader), ohne das DOM über {@code page.content()} erneut lesen zu müssen.
+ * <p>
+ * Die Playwright-Handler legen die Frames nur mit Zeitstempel im lock-freien {@link RingBuffer} ab. Konsumenten
+ * lesen entweder mit einem eigenen Cursor ({@link #newCursor()}) oder werden über einen Dispatcher-Thread
+ * benachrichtigt ({@link #subscribe(Consumer)}); optional schreibt dieser alle Frames an eine Datei.
+ * <p>
+ * XHR-Bodies werden nicht im Event-Handler gelesen (das wäre ein weiterer Roundtrip mitten in der Auslieferung),
+ * sondern vorgemerkt und vom Pump-Thread nachgeladen. Der Pump-Thread greift nur auf Playwright zu, solange es
+ * Konsumenten gibt oder Bodies ausstehen.
+ */
+@Service
+public class NetworkCaptureService {
+    private final BrowseService browseService;
+
+    private final ComdirectConfig.CaptureConfig config;
+
+    private final RingBuffer<CapturedFrame> buffer;
+
+    private static final int MAX_PENDING_RESPONSES = 256;
+
+    private static final long DEFAULT_PUMP_INTERVAL_MILLIS = 100;
+
+    private final List<Consumer<CapturedFrame>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final BlockingQueue<Response> pendingResponses = new ArrayBlockingQueue<>(MAX_PENDING_RESPONSES);
+
+    private volatile boolean cursorReaders; // Mindestens ein Lesezeiger über newCursor() vergeben
+
+    private volatile boolean running;
+
+    private Thread dispatcher;
+
+    private ScheduledExecutorService pump;
+
+    private BufferedWriter fileSink;
+
+    public NetworkCaptureService(BrowseService browseService, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.config = config.getCapture();
+        this.buffer = new RingBuffer<>(Math.max(16, this.config.getBufferSize()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) return;
+
+        openFileSink();
+        running = true;
+        dispatcher = new Thread(this::dispatch, "network-capture-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        browseService.addContextListener(this::attach);
+
+        // Playwright-Java verarbeitet Events nur während eines laufenden Aufrufs; im Leerlauf wird daher kurz gepumpt
+        // (pumpIntervalMillis <= 0: nur ausstehende XHR-Bodies lesen)
+        long interval = config.getPumpIntervalMillis() > 0 ? config.getPumpIntervalMillis() : DEFAULT_PUMP_INTERVAL_MILLIS;
+        pump = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "network-capture-pump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pump.scheduleWithFixedDelay(this::pumpEvents, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (pump != null) pump.shutdownNow();
+        if (dispatcher != null) LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * Erzeugt einen eigenen Lesezeiger auf den Ringpuffer (nur neue Frames).
+     */
+    public RingBuffer.Cursor<CapturedFrame> newCursor() {
+        cursorReaders = true;
+        return buffer.newCursor();
+    }
+
+    /**
+     * Abonnenten werden auf dem Dispatcher-Thread aufgerufen und sollten nicht blockieren.
+     */
+    public void subscribe(Consumer<CapturedFrame> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<CapturedFrame> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Capture (Playwright-Thread)
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void attach(BrowserContext context) {
+        context.pages().forEach(this::attach);
+        context.onPage(this::attach);
+    }
+
+    private void attach(Page page) {
+        page.onWebSocket(this::attach);
+        if (!config.getXhrUrlPatterns().isEmpty()) {
+            page.onResponse(this::captureResponse);
+        }
+    }
+
+    private void attach(WebSocket webSocket) {
+        String url = webSocket.url();
+        webSocket.onFrameReceived(frame -> publish(CapturedFrame.Kind.WEBSOCKET_RECEIVED, url, payloadOf(frame)));
+        webSocket.onFrameSent(frame -> publish(CapturedFrame.Kind.WEBSOCKET_SENT, url, payloadOf(frame)));
+    }
+
+    private void captureResponse(Response response) {
+        String resourceType = response.request().resourceType();
+        if (!"xhr".equals(resourceType) && !"fetch".equals(resourceType)) return;
+
+        String url = response.url();
+        for (String pattern : config.getXhrUrlPatterns()) {
+            if (url.contains(pattern)) {
+                // Body erst im Pump-Thread lesen, nicht während der Event-Auslieferung
+                if (!pendingResponses.offer(response)) {
+                    System.err.println("Capture: zu viele ausstehende XHR-Antworten, verworfen: " + url);
+                }
+                return;
+            }
+        }
+    }
+
+    private void readPendingResponses() {
+        Response response;
+        while ((response = pendingResponses.poll()) != null) {
+            try {
+                publish(CapturedFrame.Kind.XHR, response.url(), response.text());
+            } catch (Exception e) {
+                // Body nicht mehr verfügbar (z. B. Seite bereits gewechselt)
+            }
+        }
+    }
+
+    private void publish(CapturedFrame.Kind kind, String url, String payload) {
+        buffer.publish(new CapturedFrame(System.currentTimeMillis(), kind, url, payload));
+        LockSupport.unpark(dispatcher);
+    }
+
+    private static String payloadOf(WebSocketFrame frame) {
+        String text = frame.text();
+        return text != null ? text : Base64.getEncoder().encodeToString(frame.binary());
+    }
+
+    /**
+     * Hält den Monitor von {@link BrowseService} nur, wenn es etwas zu tun gibt: ausstehende XHR-Bodies lesen (das
+     * liefert nebenbei Events aus) oder, falls jemand mitliest, kurz Events pumpen.
+     */
+    private void pumpEvents() {
+        boolean consumers = config.getPumpIntervalMillis() > 0 && (!subscribers.isEmpty() || fileSink != null || cursorReaders);
+        if (pendingResponses.isEmpty() && !consumers) return;
+        try {
+            browseService.callPlaywright(() -> {
+                if (!pendingResponses.isEmpty()) {
+                    readPendingResponses();
+                } else if (browseService.page != null && !browseService.page.isClosed()) {
+                    browseService.page.waitForTimeout(1);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // Seite wird gerade gewechselt, nächster Durchlauf versucht es erneut
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Dispatch
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void dispatch() {
+        RingBuffer.Cursor<CapturedFrame> cursor = buffer.newCursor();
+        long reportedLost = 0;
+        while (running) {
+            CapturedFrame frame;
+            boolean delivered = false;
+            while ((frame = cursor.poll()) != null) {
+                delivered = true;
+                for (Consumer<CapturedFrame> subscriber : subscribers) {
+                    try {
+                        subscriber.accept(frame);
+                    } catch (Exception e) {
+                        System.err.println("Fehler in einem Capture-Abonnenten: " + e.getMessage());
+                    }
+                }
+                writeToSink(frame);
+            }
+            if (delivered) flushSink();
+            if (cursor.lost() > reportedLost) {
+                System.err.println("Capture-Dispatcher überholt, verlorene Frames: " + (cursor.lost() - reportedLost));
+                reportedLost = cursor.lost();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        closeSink();
+    }
+
+    private void openFileSink() {
+        if (config.getFileSink() == null || config.getFileSink().isBlank()) return;
+        try {
+            Path path = Path.of(config.getFileSink());
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            fileSink = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Capture-Datei konnte nicht geöffnet werden: " + e.getMessage());
+        }
+    }
+
+    private void writeToSink(CapturedFrame frame) {
+        if (fileSink == null) return;
+        try {
+            fileSink.write(frame.timestamp() + "\t" + frame.kind() + "\t" + frame.url() + "\t"
+                    + frame.payload().replace("\n", "\\n") + "\n");
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schreiben der Capture-Datei: " + e.getMessage());
+        }
+    }
+
+    private void flushSink() {
+        if (fileSink == null) return;
+        try {
+            fileSink.flush();
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schreiben der Capture-Datei: " + e.getMessage());
+        }
+    }
+
+    private void closeSink() {
+        if (fileSink == null) return;
+        try {
+            fileSink.close();
+        } catch (IOException e) {
+            System.err.println("Fehler beim Schließen der Capture-Datei: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package comdirect.services;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.options.ViewportSize;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Exportiert eine Liste von Bookmarks oder URLs (z. B. Depot- und Kontoauszüge zum Monatsende) parallel als PDF.
+ * <p>
+ * Playwright ist nicht thread-safe und {@code page.pdf()} funktioniert nur im Headless-Chromium. Jeder Worker
+ * erhält daher eine eigene Playwright-Instanz (schnell dank {@link PlaywrightBootstrap}) mit einem
+ * Headless-Chromium und genau einer Seite. Der Kontext wird aus dem Storage-State des angemeldeten Kontexts
+ * erzeugt, die Session wird also geteilt; User-Agent (ohne "HeadlessChrome"), Sprache und Fenstergröße werden
+ * ebenfalls vom angemeldeten Kontext übernommen, damit die Bank die Worker nicht als anderen Client sieht. Die
+ * Worker holen sich die Seiten aus einer gemeinsamen Warteschlange, der Durchsatz wächst so mit der Anzahl der
+ * Worker, ebenso aber der Speicher: jeder Worker ist ein eigener Node-Treiber mit eigenem Chromium (grob
+ * 250-400 MB). Während eines Exports stellt der {@link MemoryGovernor} das Recycling zurück. Jede PDF wird von
+ * Playwright zuerst als {@code .part} geschrieben und dann umbenannt, unter
+ * {@code <directory>/<jjjj>/<jjjj-MM>/<jjjj-MM-tt>/}.
+ */
+@Service
+public class PdfExportService {
+    private static final DateTimeFormatter FOLDER = DateTimeFormatter.ofPattern("yyyy/yyyy-MM/yyyy-MM-dd");
+
+    private final BrowseService browseService;
+
+    private final BookmarkManager bookmarkManager;
+
+    private final PlaywrightBootstrap playwrightBootstrap;
+
+    private final LoadStrategyService loadStrategy;
+
+    private final ComdirectConfig.ExportConfig config;
+
+    private final String loginUrlPattern;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Ergebnis eines Exports.
+     *
+     * @param failed Fehlgeschlagene Seiten mit Grund
+     */
+    public record ExportReport(Path directory, int exported, List<String> failed, long durationMillis) {
+        public double pagesPerMinute() {
+            return durationMillis > 0 ? exported * 60_000.0 / durationMillis : 0;
+        }
+    }
+
+    private record Job(String name, String url) {
+    }
+
+    public PdfExportService(BrowseService browseService, BookmarkManager bookmarkManager,
+                            PlaywrightBootstrap playwrightBootstrap, LoadStrategyService loadStrategy, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.bookmarkManager = bookmarkManager;
+        this.playwrightBootstrap = playwrightBootstrap;
+        this.loadStrategy = loadStrategy;
+        this.config = config.getExport();
+        this.loginUrlPattern = config.getSession().getLoginUrlPattern();
+    }
+
+    /**
+     * Exportiert die Seiten und blockiert bis zum Ende. Nicht auf dem FX-Thread aufrufen.
+     *
+     * @param targets  Bookmark-Namen oder URLs
+     * @param progress Wird nach jeder Seite mit (erledigt, gesamt) aufgerufen, auf einem Worker-Thread
+     */
+    public ExportReport export(List<String> targets, BiConsumer<Integer, Integer> progress) {
+        if (!running.compareAndSet(false, true)) throw new IllegalStateException("Es läuft bereits ein PDF-Export.");
+        try {
+            return run(targets, progress);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * @return true, solange ein Export läuft (die Worker-Prozesse belegen dann zusätzlichen Speicher)
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private ExportReport run(List<String> targets, BiConsumer<Integer, Integer> progress) {
+        long start = System.currentTimeMillis();
+        List<String> failed = new CopyOnWriteArrayList<>();
+        BlockingQueue<Job> jobs = new LinkedBlockingQueue<>(resolve(targets, failed));
+        int total = jobs.size();
+        Path directory = Path.of(config.getDirectory()).resolve(LocalDate.now().format(FOLDER));
+        if (total == 0) return new ExportReport(directory, 0, List.copyOf(failed), 0);
+
+        // Session und Erscheinungsbild des angemeldeten Kontexts für die Worker übernehmen
+        Browser.NewContextOptions contextOptions = browseService.callPlaywright(this::workerContextOptions);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Exportverzeichnis konnte nicht angelegt werden: " + directory, e);
+        }
+
+        int workers = Math.max(1, Math.min(config.getWorkers(), total));
+        AtomicInteger exported = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        AtomicBoolean sessionLost = new AtomicBoolean();
+        AtomicInteger workerId = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-export-" + workerId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                tasks.add(() -> work(jobs, contextOptions, directory, sessionLost, exported::incrementAndGet, failed,
+                        () -> progress.accept(done.incrementAndGet(), total)));
+            }
+            pool.invokeAll(tasks.stream().map(Executors::callable).toList());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Was kein Worker mehr verarbeiten konnte (Session verloren, Worker-Start fehlgeschlagen)
+        for (Job job : jobs) {
+            failed.add(job.name() + ": " + (sessionLost.get() ? "Session abgelaufen" : "nicht verarbeitet"));
+        }
+
+        ExportReport report = new ExportReport(directory, exported.get(), List.copyOf(failed), System.currentTimeMillis() - start);
+        System.out.printf("PDF-Export: %d von %d Seiten in %.1f s (%.1f Seiten/Minute, %d Worker) nach %s%n",
+                report.exported(), total, report.durationMillis() / 1000.0, report.pagesPerMinute(), workers, directory);
+        return report;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Worker
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Optionen für die Worker-Kontexte aus dem angemeldeten Kontext. Läuft unter {@code callPlaywright}.
+     */
+    private Browser.NewContextOptions workerContextOptions() {
+        Browser.NewContextOptions options = new Browser.NewContextOptions()
+                .setStorageState(browseService.context.storageState())
+                // Headless-Worker würden sich sonst als "HeadlessChrome" ausweisen
+                .setUserAgent(browseService.getUserAgent().replace("HeadlessChrome", "Chrome"));
+        if (browseService.page.evaluate("() => navigator.language") instanceof String locale && !locale.isEmpty()) {
+            options.setLocale(locale);
+        }
+        ViewportSize viewport = browseService.page.viewportSize();
+        if (viewport != null) options.setViewportSize(viewport.width, viewport.height); // Im Daemon-Modus ohne festen Viewport
+        return options;
+    }
+
+    private void work(BlockingQueue<Job> jobs, Browser.NewContextOptions contextOptions, Path directory, AtomicBoolean sessionLost,
+                      Runnable onExported, List<String> failed, Runnable onDone) {
+        try (Playwright playwright = playwrightBootstrap.create();
+             Browser browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(true));
+             BrowserContext context = browser.newContext(contextOptions)) {
+            Page page = context.newPage();
+            page.setDefaultTimeout(config.getTimeoutMs());
+
+            Job job;
+            while (!sessionLost.get() && (job = jobs.poll()) != null) {
+                try {
+                    // Gleiche Regeln wie im Browser; eine Zeitüberschreitung druckt den aktuellen Stand statt abzubrechen
+                    page.navigate(job.url(), loadStrategy.navigateOptions(job.url()));
+                    loadStrategy.awaitReady(page, job.url());
+                    if (loginUrlPattern != null && !loginUrlPattern.isEmpty() && page.url().contains(loginUrlPattern)) {
+                        // Umleitung auf den Login: alle weiteren Seiten würden ebenfalls scheitern
+                        sessionLost.set(true);
+                        failed.add(job.name() + ": Session abgelaufen");
+                        continue;
+                    }
+                    write(page, directory.resolve(job.name() + ".pdf"));
+                    onExported.run();
+                } catch (Exception e) {
+                    failed.add(job.name() + ": " + e.getMessage());
+                    System.err.println("PDF-Export fehlgeschlagen für " + job.url() + ": " + e.getMessage());
+                } finally {
+                    onDone.run();
+                }
+            }
+        } catch (Exception e) {
+            // Übrige Worker arbeiten die Warteschlange weiter ab
+            System.err.println("PDF-Export-Worker konnte nicht gestartet werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lässt Playwright die PDF direkt in eine {@code .part}-Datei schreiben und benennt sie erst danach um, damit im
+     * Archiv keine halb geschriebenen Dateien liegen.
+     */
+    private void write(Page page, Path target) throws IOException {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        page.pdf(new Page.PdfOptions()
+                .setFormat(config.getFormat())
+                .setPrintBackground(config.isPrintBackground())
+                .setPath(part));
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Löst Bookmark-Namen zu URLs auf und vergibt eindeutige Dateinamen.
+     */
+    private List<Job> resolve(List<String> targets, List<String> failed) {
+        List<Job> jobs = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String target : targets) {
+            String bookmarkUrl = bookmarkManager.getBookmarkUrlByName(target);
+            String url = bookmarkUrl != null ? bookmarkUrl : target;
+            String base;
+            try {
+                if (!url.startsWith("http://") && !url.startsWith("https://")) throw new IllegalArgumentException();
+                base = fileName(bookmarkUrl != null ? target : nameFromUrl(url));
+            } catch (IllegalArgumentException e) {
+                failed.add(target + ": weder Bookmark noch gültige URL");
+                continue;
+            }
+            String name = base;
+            for (int i = 2; !names.add(name); i++) name = base + "_" + i;
+            jobs.add(new Job(name, url));
+        }
+        return jobs;
+    }
+
+    private static String nameFromUrl(String url) {
+        URI uri = URI.create(url);
+        String path = uri.getPath() != null ? uri.getPath().replaceAll("/+$", "") : "";
+        String last = path.substring(path.lastIndexOf('/') + 1);
+        return last.isEmpty() ? uri.getHost() : last;
+    }
+
+    private static String fileName(String name) {
+        String cleaned = name.replaceAll("[^\\p{L}\\p{N}._-]+", "_").replaceAll("^_+|_+$", "");
+        return cleaned.isEmpty() ? "seite" : cleaned;
+    }
+}
@@ -0,0 +1,338 @@
+package comdirect.services;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.playwright.Playwright;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Startet Playwright aus einem festen, versionierten Cache statt bei jedem Start neu zu entpacken.
+ * <p>
+ * Ohne Cache entpackt {@code Playwright.create()} den Node-Treiber bei jedem Start in ein Temp-Verzeichnis und
+ * prüft die Browser-Installation. Hier liegen Treiber und Browser unter {@code <cacheDirectory>/<version>}. Beim
+ * ersten Start läuft Playwright einmal regulär (und installiert die Browser in den Cache), danach wird der Treiber
+ * entpackt und einmalig per SHA-256 mit den Einträgen des driver-bundle verglichen; erst dann kennzeichnet ihn eine
+ * Marker-Datei als gültig. Folgestarts prüfen nur noch Marker, Dateianzahl und Größen sowie Playwrights eigene
+ * {@code INSTALLATION_COMPLETE}-Datei des Chromium und übergeben den Treiber über {@code playwright.cli.dir};
+ * Playwright startet dann nur noch den Treiber-Prozess. Ist der Cache ungültig, wird der reguläre Weg genommen und
+ * der Cache neu aufgebaut.
+ */
+@Component
+public class PlaywrightBootstrap {
+    private static final String MARKER = ".verified";
+
+    private static final String BROWSER_INSTALLED = "INSTALLATION_COMPLETE"; // Schreibt Playwright nach jeder Browser-Installation
+
+    private static final Pattern BUNDLE_VERSION = Pattern.compile("driver-bundle-([0-9][^/!]*)\\.jar");
+
+    private final ComdirectConfig.BootstrapConfig config;
+
+    private volatile boolean cacheReady;
+
+    public PlaywrightBootstrap(ComdirectConfig config) {
+        this.config = config.getBrowser().getBootstrap();
+    }
+
+    /**
+     * Erzeugt eine Playwright-Instanz, nach Möglichkeit aus dem Cache. Kann mehrfach (auch aus mehreren Threads)
+     * aufgerufen werden, der Cache wird nur einmal geprüft bzw. aufgebaut.
+     */
+    public Playwright create() {
+        if (!config.isEnabled()) return Playwright.create();
+
+        long start = System.currentTimeMillis();
+        try {
+            Path versionDir = versionDirectory();
+            Path driverDir = versionDir.resolve("driver");
+            Path browsersDir = versionDir.resolve("browsers");
+            Playwright.CreateOptions options = new Playwright.CreateOptions().setEnv(Map.of(
+                    "PLAYWRIGHT_BROWSERS_PATH", browsersDir.toAbsolutePath().toString(),
+                    "PLAYWRIGHT_SKIP_BROWSER_DOWNLOAD", "1"));
+
+            synchronized (this) {
+                if (!cacheReady && !isValid(driverDir, browsersDir)) {
+                    // Regulärer Start: entpackt den Treiber ins Temp-Verzeichnis und installiert die Browser in den Cache
+                    Playwright playwright = Playwright.create(new Playwright.CreateOptions()
+                            .setEnv(Map.of("PLAYWRIGHT_BROWSERS_PATH", browsersDir.toAbsolutePath().toString())));
+                    rebuildDriverCache(driverDir);
+                    System.out.println("Playwright-Cache aufgebaut nach " + (System.currentTimeMillis() - start) + " ms: " + versionDir);
+                    return playwright;
+                }
+                cacheReady = true;
+            }
+
+            System.setProperty("playwright.cli.dir", driverDir.toAbsolutePath().toString());
+            Playwright playwright = Playwright.create(options);
+            System.out.println("Playwright aus dem Cache gestartet nach " + (System.currentTimeMillis() - start) + " ms.");
+            return playwright;
+        } catch (RuntimeException | IOException e) {
+            // Cache beim nächsten Start neu aufbauen
+            invalidate();
+            if (System.getProperty("playwright.cli.dir") != null) throw asRuntime(e);
+            System.err.println("Playwright-Cache nicht nutzbar, regulärer Start: " + e.getMessage());
+            return Playwright.create();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Cache validation
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private boolean isValid(Path driverDir, Path browsersDir) throws IOException {
+        Path marker = driverDir.resolve(MARKER);
+        if (!Files.exists(marker) || !Files.isDirectory(browsersDir)) return false;
+
+        // Schnelle Prüfung ohne Hashen: Anzahl und Gesamtgröße der Dateien wie beim Entpacken
+        List<String> lines = Files.readAllLines(marker, StandardCharsets.UTF_8);
+        long[] stats = statistics(driverDir);
+        boolean driverIntact = lines.size() >= 2
+                && lines.get(0).equals("files=" + stats[0])
+                && lines.get(1).equals("bytes=" + stats[1]);
+
+        return driverIntact && isChromiumInstalled(driverDir, browsersDir);
+    }
+
+    /**
+     * Prüft die vom Treiber erwartete Chromium-Revision ({@code package/browsers.json}) auf eine abgeschlossene
+     * Installation. Fehlt die Beschreibung, genügt ein beliebiges vollständig installiertes Chromium.
+     */
+    private static boolean isChromiumInstalled(Path driverDir, Path browsersDir) throws IOException {
+        Path descriptor = driverDir.resolve("package").resolve("browsers.json");
+        if (Files.exists(descriptor)) {
+            try {
+                for (JsonElement browser : JsonParser.parseString(Files.readString(descriptor)).getAsJsonObject().getAsJsonArray("browsers")) {
+                    JsonObject entry = browser.getAsJsonObject();
+                    if ("chromium".equals(entry.get("name").getAsString())) {
+                        return Files.exists(browsersDir.resolve("chromium-" + entry.get("revision").getAsString()).resolve(BROWSER_INSTALLED));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Unbekanntes Format: allgemeine Prüfung
+            }
+        }
+        try (Stream<Path> browsers = Files.list(browsersDir)) {
+            return browsers.anyMatch(dir -> dir.getFileName().toString().startsWith("chromium")
+                    && Files.exists(dir.resolve(BROWSER_INSTALLED)));
+        }
+    }
+
+    private void invalidate() {
+        try {
+            Files.deleteIfExists(versionDirectory().resolve("driver").resolve(MARKER));
+        } catch (IOException | RuntimeException e) {
+            // Nichts zu invalidieren
+        }
+        cacheReady = false;
+    }
+
+    private static long[] statistics(Path driverDir) throws IOException {
+        long files = 0;
+        long bytes = 0;
+        try (Stream<Path> paths = Files.walk(driverDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).filter(path -> !path.getFileName().toString().equals(MARKER)).toList()) {
+                files++;
+                bytes += Files.size(path);
+            }
+        }
+        return new long[]{files, bytes};
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Driver extraction
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Path versionDirectory() throws IOException {
+        URL driver = driverResource();
+        Matcher matcher = BUNDLE_VERSION.matcher(driver.toString());
+        String version = matcher.find() ? matcher.group(1)
+                : HexFormat.of().formatHex(sha256(driver.toString().getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        return Path.of(config.getCacheDirectory(), version + "-" + platform());
+    }
+
+    private void rebuildDriverCache(Path driverDir) throws IOException {
+        Path staging = driverDir.resolveSibling("driver.tmp");
+        deleteTree(staging);
+        Files.createDirectories(staging);
+
+        String expectedChecksum;
+        try {
+            expectedChecksum = copyDriver(driverResource().toURI(), staging);
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        if (!isWindows()) {
+            try (Stream<Path> paths = Files.walk(staging)) {
+                paths.filter(Files::isRegularFile)
+                        .filter(path -> path.getFileName().toString().equals("node") || path.getFileName().toString().endsWith(".sh"))
+                        .forEach(path -> path.toFile().setExecutable(true));
+            }
+        }
+
+        // Einmalige Prüfung: Kopie muss den Einträgen des driver-bundle entsprechen, Statistik für die schnelle Prüfung
+        long[] stats = statistics(staging);
+        String checksum = checksum(staging);
+        if (!checksum.equals(expectedChecksum)) {
+            deleteTree(staging);
+            throw new IOException("Prüfsumme des entpackten Treibers weicht vom driver-bundle ab");
+        }
+        Files.writeString(staging.resolve(MARKER), "files=" + stats[0] + "\nbytes=" + stats[1] + "\nsha256=" + checksum + "\n");
+
+        deleteTree(driverDir);
+        Files.move(staging, driverDir, StandardCopyOption.ATOMIC_MOVE);
+        cacheReady = true;
+    }
+
+    /**
+     * Kopiert {@code driver/<plattform>} aus dem Klassenpfad: Verzeichnis (IDE), JAR oder in einem Spring-Boot-JAR
+     * verschachteltes JAR ({@code jar:file:/app.jar!/BOOT-INF/lib/driver-bundle.jar!/driver/linux}).
+     *
+     * @return Prüfsumme der Quelleinträge, zum Vergleich mit der Kopie
+     */
+    private static String copyDriver(URI uri, Path target) throws IOException {
+        if ("file".equals(uri.getScheme())) {
+            return copyTree(Path.of(uri), target);
+        }
+
+        String[] parts = uri.toString().split("!/");
+        try (FileSystem outer = openJar(URI.create(parts[0]))) {
+            if (parts.length == 2) {
+                return copyTree(outer.getPath(parts[1]), target);
+            }
+            Path nestedJar = Files.createTempFile("driver-bundle", ".jar");
+            try {
+                Files.copy(outer.getPath(parts[1]), nestedJar, StandardCopyOption.REPLACE_EXISTING);
+                try (FileSystem nested = FileSystems.newFileSystem(nestedJar)) {
+                    return copyTree(nested.getPath(parts[2]), target);
+                }
+            } finally {
+                Files.deleteIfExists(nestedJar);
+            }
+        }
+    }
+
+    private static FileSystem openJar(URI jar) throws IOException {
+        try {
+            return FileSystems.newFileSystem(jar, Map.of());
+        } catch (FileSystemAlreadyExistsException e) {
+            // Bereits von anderer Stelle geöffnet (z. B. von Playwright): eigene Instanz auf derselben Datei öffnen,
+            // damit das Schließen hier die fremde nicht betrifft
+            return FileSystems.newFileSystem(Path.of(URI.create(jar.toString().substring("jar:".length()))));
+        }
+    }
+
+    /**
+     * @return Prüfsumme der Quelle, gelesen solange das Dateisystem des JARs noch offen ist
+     */
+    private static String copyTree(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.toList()) {
+                Path destination = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        return checksum(source);
+    }
+
+    /**
+     * SHA-256 über relative Pfade und Inhalte aller Dateien (ohne Marker). Pfade werden mit {@code /} getrennt und
+     * als Text sortiert, damit JAR und Dateisystem (auch unter Windows) dieselbe Reihenfolge ergeben.
+     */
+    private static String checksum(Path directory) throws IOException {
+        MessageDigest digest = newDigest();
+        Map<String, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().equals(MARKER))
+                    .forEach(path -> files.put(directory.relativize(path).toString().replace('\\', '/'), path));
+        }
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            digest.update(file.getKey().getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file.getValue()), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static URL driverResource() throws IOException {
+        URL url = Playwright.class.getClassLoader().getResource("driver/" + platform());
+        if (url == null) throw new IOException("Playwright-Treiber nicht im Klassenpfad: driver/" + platform());
+        return url;
+    }
+
+    /**
+     * Verzeichnisname des Treibers im driver-bundle, wie ihn Playwright selbst bestimmt.
+     */
+    private static String platform() {
+        String name = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        boolean arm = System.getProperty("os.arch").toLowerCase(Locale.ROOT).equals("aarch64");
+        if (name.contains("windows")) return "win32_x64";
+        if (name.contains("linux")) return arm ? "linux-arm64" : "linux";
+        if (name.contains("mac os x")) return arm ? "mac-arm64" : "mac";
+        throw new IllegalStateException("Nicht unterstütztes Betriebssystem: " + name);
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("windows");
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return newDigest().digest(data);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException asRuntime(Exception e) {
+        return e instanceof RuntimeException runtime ? runtime : new IllegalStateException(e);
+    }
+}
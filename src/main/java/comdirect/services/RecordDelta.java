@@ -0,0 +1,17 @@
+package comdirect.services;
+
+/**
+ * Änderung eines Datensatzes zwischen zwei Abfragen eines Extraktors.
+ *
+ * @param type     Art der Änderung
+ * @param record   Aktueller Datensatz (bei REMOVED der zuletzt bekannte Stand)
+ * @param previous Vorheriger Stand (nur bei CHANGED, sonst null)
+ */
+public record RecordDelta(Type type, ExtractedRecord record, ExtractedRecord previous) {
+
+    public enum Type {
+        INSERTED,
+        CHANGED,
+        REMOVED
+    }
+}
@@ -0,0 +1,393 @@
+package comdirect.services;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Response;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import comdirect.config.ComdirectConfig;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lokaler Server (nur 127.0.0.1), über den die WebView die Unterressourcen einer gespiegelten Seite lädt.
+ * <p>
+ * Die Antworten, die Playwright für CSS, Skripte, Bilder und Schriften ohnehin erhalten hat, werden über
+ * {@code onResponse} des Kontexts vorgemerkt; den Body holt erst die erste Anfrage der WebView (nicht der
+ * Playwright-Thread) und legt ihn in einem größenbegrenzten LRU-Speicher ab. Große Antworten werden in Dateien
+ * ausgelagert und beim Ausliefern gestreamt. Vor dem Anzeigen schreibt {@link #rewrite} die Verweise des Dokuments
+ * auf den Server um. Jede Ressource geht so nur einmal über das Netz, und zwar mit den Cookies der Session.
+ * <p>
+ * Die URLs bilden den Pfad des Originals hinter einem zufälligen Token ab ({@code /<token>/https/host/pfad}),
+ * relative Verweise in Stylesheets landen daher ebenfalls hier. Das Token kennt nur {@link #rewrite}; Anfragen
+ * ohne Token oder mit fremdem Host- bzw. Origin-Header werden abgewiesen, damit andere lokale Prozesse und
+ * Webseiten den Speicher nicht auslesen können. Fehlt eine Ressource, wird nur dann auf das Original umgeleitet,
+ * wenn Playwright diese URL tatsächlich geladen hat.
+ */
+@Service
+public class ResourceServer {
+    private static final Set<String> CACHED_TYPES = Set.of("stylesheet", "script", "image", "font", "media");
+
+    private static final int MAX_ENTRIES = 4096; // Vorgemerkte und geladene Ressourcen
+
+    private static final int MAX_SEEN_URLS = 16384; // Erlaubte Umleitungsziele
+
+    private static final String[][] RESOURCE_ATTRIBUTES = {
+            {"link[rel~=(?i)stylesheet|icon|preload][href]", "href"},
+            {"script[src]", "src"},
+            {"img[src]", "src"},
+            {"source[src]", "src"},
+            {"video[poster]", "poster"},
+            {"input[type=image][src]", "src"}
+    };
+
+    private final BrowseService browseService;
+
+    private final ComdirectConfig.ResourceServerConfig config;
+
+    private final LinkedHashMap<String, Entry> store = new LinkedHashMap<>(256, 0.75f, true); // LRU, Zugriff nur synchronisiert
+
+    // Von Playwright geladene URLs, nur auf diese wird umgeleitet; Zugriff nur synchronisiert
+    private final Set<String> seenUrls = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SEEN_URLS;
+        }
+    });
+
+    private final String token = newToken();
+
+    private long memoryBytes;
+
+    private long diskBytes;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private Path spillDirectory;
+
+    private String origin; // z. B. http://127.0.0.1:53817
+
+    private String host; // Erwarteter Host-Header, z. B. 127.0.0.1:53817
+
+    public ResourceServer(BrowseService browseService, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.config = config.getResourceServer();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) return;
+        try {
+            spillDirectory = Files.createTempDirectory("comdirect-resources");
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort()), 0);
+            server.createContext("/", this::serve);
+            executor = Executors.newFixedThreadPool(4, runnable -> {
+                Thread thread = new Thread(runnable, "resource-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(executor);
+            server.start();
+            host = server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+            origin = "http://" + host;
+            System.out.println("Ressourcen-Server gestartet: " + origin);
+
+            browseService.addContextListener(this::attach);
+        } catch (IOException e) {
+            System.err.println("Ressourcen-Server konnte nicht gestartet werden: " + e.getMessage());
+            server = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+        synchronized (this) {
+            store.values().forEach(Entry::delete);
+            store.clear();
+            seenUrls.clear();
+        }
+        if (spillDirectory != null) {
+            try {
+                Files.deleteIfExists(spillDirectory);
+            } catch (IOException e) {
+                // Verzeichnis nicht leer (Datei noch geöffnet), verbleibt im Temp-Verzeichnis
+            }
+        }
+    }
+
+    /**
+     * Schreibt die Verweise auf Unterressourcen auf den lokalen Server um. Ist der Server nicht aktiv, wird das
+     * Dokument unverändert zurückgegeben.
+     *
+     * @param html    Dokument aus {@code page.content()}
+     * @param baseUrl URL der Seite, gegen die relative Verweise aufgelöst werden
+     */
+    public String rewrite(String html, String baseUrl) {
+        if (server == null || baseUrl == null || !baseUrl.startsWith("http")) return html;
+
+        Document document = Jsoup.parse(html, baseUrl);
+        for (String[] selectorAndAttribute : RESOURCE_ATTRIBUTES) {
+            String attribute = selectorAndAttribute[1];
+            for (Element element : document.select(selectorAndAttribute[0])) {
+                String absolute = element.absUrl(attribute);
+                if (!absolute.isEmpty()) element.attr(attribute, localUrl(absolute));
+            }
+        }
+        for (Element element : document.select("[srcset]")) {
+            element.removeAttr("srcset"); // Kandidaten wurden von Playwright nicht alle geladen, src genügt
+        }
+        return document.outerHtml();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Store (Playwright-Thread)
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void attach(BrowserContext context) {
+        context.onResponse(this::store);
+    }
+
+    /**
+     * Merkt die Antwort nur vor. Hier werden ausschließlich lokal vorliegende Werte gelesen, der Body wird erst
+     * beim Ausliefern geholt.
+     */
+    private void store(Response response) {
+        String url = response.url();
+        synchronized (this) {
+            seenUrls.add(url);
+        }
+        if (!CACHED_TYPES.contains(response.request().resourceType())) return;
+        if (response.status() != 200 || !"GET".equals(response.request().method())) return;
+
+        put(url, new Entry(response));
+    }
+
+    private synchronized void put(String url, Entry entry) {
+        Entry previous = store.put(url, entry);
+        if (previous != null) remove(previous);
+        evict(entry);
+    }
+
+    /**
+     * Lädt den Body einer vorgemerkten Antwort über Playwright. Läuft auf einem Server-Thread und hält dabei nicht
+     * den Monitor dieser Klasse (der Playwright-Thread ruft {@link #store} unter dem Monitor von BrowseService auf).
+     *
+     * @return false, wenn der Body nicht mehr verfügbar ist
+     */
+    private boolean load(String url, Entry entry) {
+        Response response = entry.response;
+        if (response == null) return true; // Bereits geladen
+        byte[] body;
+        String contentType;
+        try {
+            body = browseService.callPlaywright(response::body);
+            contentType = browseService.callPlaywright(() -> response.headerValue("content-type"));
+        } catch (Exception e) {
+            // Antwort ohne Body (z. B. abgebrochen oder nach einer Navigation verworfen)
+            synchronized (this) {
+                if (store.get(url) == entry) store.remove(url);
+            }
+            return false;
+        }
+
+        Path file = null;
+        try {
+            if (body.length > config.getSpillThresholdKb() * 1024L) {
+                file = Files.createTempFile(spillDirectory, "res", ".bin");
+                Files.write(file, body);
+            }
+        } catch (IOException e) {
+            file = null; // Auslagern fehlgeschlagen, im Speicher halten
+        }
+
+        synchronized (this) {
+            if (entry.response == null) {
+                // Ein anderer Thread war schneller
+                if (file != null) Entry.delete(file);
+                return true;
+            }
+            entry.contentType = contentType != null ? contentType : "application/octet-stream";
+            entry.length = body.length;
+            entry.response = null;
+            if (store.get(url) != entry) {
+                // Während des Ladens verdrängt: nur noch diese Anfrage aus dem Speicher bedienen, nichts zählen
+                if (file != null) Entry.delete(file);
+                entry.body = body;
+                return true;
+            }
+            if (file != null) entry.file = file; else entry.body = body;
+            if (entry.file != null) diskBytes += entry.length; else memoryBytes += entry.length;
+            evict(entry);
+            return true;
+        }
+    }
+
+    private void evict(Entry keep) {
+        long maxMemory = config.getMaxMemoryMb() * 1024L * 1024L;
+        long maxDisk = config.getMaxDiskMb() * 1024L * 1024L;
+        Iterator<Entry> oldest = store.values().iterator();
+        while ((memoryBytes > maxMemory || diskBytes > maxDisk || store.size() > MAX_ENTRIES) && oldest.hasNext()) {
+            Entry evicted = oldest.next();
+            if (evicted == keep) continue;
+            oldest.remove();
+            remove(evicted);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entry.response == null) {
+            if (entry.file != null) diskBytes -= entry.length; else memoryBytes -= entry.length;
+        }
+        entry.delete();
+    }
+
+    private synchronized Entry get(String url) {
+        return store.get(url);
+    }
+
+    private synchronized boolean wasSeen(String url) {
+        return seenUrls.contains(url);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// HTTP
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private String localUrl(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url.replace(" ", "%20"));
+        } catch (IllegalArgumentException e) {
+            return url; // Nicht abbildbar, WebView lädt direkt
+        }
+        if (uri.getScheme() == null || !uri.getScheme().startsWith("http") || uri.getRawAuthority() == null) return url;
+        return origin + "/" + token + "/" + uri.getScheme() + "/" + uri.getRawAuthority()
+                + (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+    }
+
+    /**
+     * Umkehrung von {@link #localUrl}: {@code /<token>/https/host/pfad?query} -> {@code https://host/pfad?query}.
+     *
+     * @return null ohne gültiges Token oder Schema
+     */
+    private String originalUrl(URI requestUri) {
+        String prefix = "/" + token + "/";
+        String path = requestUri.getRawPath();
+        if (path == null || !path.startsWith(prefix)) return null;
+        path = path.substring(prefix.length() - 1);
+        int schemeEnd = path.indexOf('/', 1);
+        if (schemeEnd < 0) return null;
+        String scheme = path.substring(1, schemeEnd);
+        if (!scheme.equals("http") && !scheme.equals("https")) return null;
+        return scheme + "://" + path.substring(schemeEnd + 1)
+                + (requestUri.getRawQuery() != null ? "?" + requestUri.getRawQuery() : "");
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // Nur die WebView: Host muss der eigene sein (DNS-Rebinding), Origin leer, "null" (loadContent) oder eigen
+            String requestOrigin = exchange.getRequestHeaders().getFirst("Origin");
+            if (!host.equals(exchange.getRequestHeaders().getFirst("Host"))
+                    || requestOrigin != null && !requestOrigin.equals("null") && !requestOrigin.equals(origin)) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            String url = originalUrl(exchange.getRequestURI());
+            if (url == null || !"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            // Schriften werden per CORS geladen: nur dem anfragenden, bereits geprüften Origin erlauben
+            if (requestOrigin != null) {
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", requestOrigin);
+                exchange.getResponseHeaders().set("Vary", "Origin");
+            }
+            Entry entry = get(url);
+            if (entry == null || !load(url, entry)) {
+                if (!wasSeen(url)) {
+                    // Keine offene Umleitung auf beliebige Ziele
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                // Von Playwright geladen, aber nicht zwischengespeichert: WebView holt die Ressource selbst
+                exchange.getResponseHeaders().set("Location", url);
+                exchange.sendResponseHeaders(302, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", entry.contentType);
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=300");
+            exchange.sendResponseHeaders(200, entry.length == 0 ? -1 : entry.length);
+            if (entry.length == 0) return;
+
+            OutputStream body = exchange.getResponseBody();
+            if (entry.body != null) {
+                body.write(entry.body);
+            } else {
+                Files.copy(entry.file, body); // Große Antworten gestreamt aus der Datei
+            }
+        } catch (IOException e) {
+            // Verbindung von der WebView abgebrochen oder Datei zwischenzeitlich verdrängt
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    /**
+     * Vorgemerkte Antwort ({@code response} gesetzt) oder geladener Body (im Speicher oder als Datei).
+     */
+    private static class Entry {
+        Response response;
+        String contentType;
+        long length;
+        byte[] body;
+        Path file;
+
+        Entry(Response response) {
+            this.response = response;
+        }
+
+        void delete() {
+            if (file != null) delete(file);
+        }
+
+        static void delete(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Wird noch ausgeliefert (Windows), bleibt im Temp-Verzeichnis
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package comdirect.services;
+
+/**
+ * Treffer der Volltextsuche über besuchte Seiten.
+ *
+ * @param url       Adresse der Seite
+ * @param title     Seitentitel (leer, falls keiner vorhanden)
+ * @param snippet   Textausschnitt um den ersten gefundenen Begriff
+ * @param score     Relevanz (TF-IDF), höher ist besser
+ * @param timestamp Zeitpunkt des Besuchs in Millisekunden seit Epoch
+ */
+public record SearchHit(String url, String title, String snippet, double score, long timestamp) {
+}
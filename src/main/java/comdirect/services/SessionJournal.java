@@ -0,0 +1,360 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persistentes Sitzungsjournal: ersetzt die History im Speicher und überlebt einen Neustart.
+ * <p>
+ * Alle Ereignisse (Navigationen, Formulare, Downloads) werden mit Zeitstempel und Dauer als Binärsatz an
+ * {@code journal.log} angehängt, ein gepufferter Schreibvorgang pro Ereignis. Die History-Positionen stehen in
+ * {@code journal.idx}, einer per Memory-Mapping beschriebenen Tabelle (Kopf mit Länge und aktueller Position,
+ * danach der Log-Offset jeder Position). Zurück und Vor verschieben nur die aktuelle Position; eine neue
+ * Navigation mitten in der History kürzt die Tabelle durch Setzen der Länge, ohne etwas zu kopieren. Überschreitet
+ * das Log beim Start {@code maxLogMb}, werden nur die Navigationen der aktuellen History übernommen.
+ */
+@Component
+public class SessionJournal {
+    private static final int MAGIC = 0x534A4E31; // "SJN1"
+    private static final int HEADER_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MIN_RECORD_BYTES = 1 + 8 + 4 + 2 + 2; // Typ, Zeitstempel, Dauer, zwei leere Texte
+    private static final int MAX_UTF_BYTES = 65535; // Grenze von writeUTF
+
+    private static final String LOG_FILE = "journal.log";
+    private static final String INDEX_FILE = "journal.idx";
+
+    public enum Type {
+        NAVIGATION,
+        FORM_POST,
+        DOWNLOAD
+    }
+
+    /**
+     * Ein Satz des Journals.
+     *
+     * @param detail Zusatzinformation, z. B. Speicherort eines Downloads (sonst leer)
+     */
+    public record Entry(Type type, long timestamp, int durationMillis, String url, String detail) {
+    }
+
+    private final Path directory;
+
+    private FileChannel logChannel;
+
+    private DataOutputStream log;
+
+    private long logSize;
+
+    private FileChannel indexChannel;
+
+    private MappedByteBuffer index;
+
+    private int capacity;
+
+    public SessionJournal(ComdirectConfig config) {
+        this.directory = Path.of(config.getJournal().getDirectory());
+        try {
+            Files.createDirectories(directory);
+            compactIfLarger(config.getJournal().getMaxLogMb() * 1024L * 1024L);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sitzungsjournal konnte nicht geöffnet werden: " + directory, e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        try {
+            log.close();
+            logChannel.close();
+            index.force();
+            indexChannel.close();
+        } catch (IOException e) {
+            System.err.println("Sitzungsjournal konnte nicht geschlossen werden: " + e.getMessage());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Recording
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Hängt eine Navigation an. Steht die aktuelle Position nicht am Ende, werden die Einträge danach verworfen.
+     */
+    public synchronized void recordNavigation(String url, long durationMillis) {
+        long offset = append(new Entry(Type.NAVIGATION, System.currentTimeMillis(), (int) durationMillis, url, ""));
+        int position = current() + 1;
+        ensureCapacity(position + 1);
+        index.putLong(HEADER_BYTES + position * 8, offset);
+        index.putInt(4, position + 1); // Länge (kürzt ggf. die Vor-Einträge)
+        index.putInt(8, position);
+    }
+
+    public synchronized void recordFormPost(String url, long durationMillis) {
+        append(new Entry(Type.FORM_POST, System.currentTimeMillis(), (int) durationMillis, url, ""));
+    }
+
+    public synchronized void recordDownload(String url, String path) {
+        append(new Entry(Type.DOWNLOAD, System.currentTimeMillis(), 0, url, path != null ? path : ""));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// History positioning
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Geht eine Position zurück.
+     *
+     * @return URL der neuen Position oder null, wenn es keine vorherige gibt
+     */
+    public synchronized String back() {
+        int position = current();
+        if (position <= 0) return null;
+        Entry entry = entryAt(position - 1);
+        if (entry == null) return null;
+        index.putInt(8, position - 1);
+        return entry.url();
+    }
+
+    /**
+     * Geht eine Position vor.
+     *
+     * @return URL der neuen Position oder null, wenn es keine nächste gibt
+     */
+    public synchronized String forward() {
+        int position = current();
+        if (position >= size() - 1) return null;
+        Entry entry = entryAt(position + 1);
+        if (entry == null) return null;
+        index.putInt(8, position + 1);
+        return entry.url();
+    }
+
+    /**
+     * @return URL der aktuellen Position (nach einem Neustart die der letzten Sitzung) oder null
+     */
+    public synchronized String currentUrl() {
+        int position = current();
+        Entry entry = position >= 0 && position < size() ? entryAt(position) : null;
+        return entry != null ? entry.url() : null;
+    }
+
+    public synchronized int size() {
+        return index.getInt(4);
+    }
+
+    public synchronized int current() {
+        return index.getInt(8);
+    }
+
+    /**
+     * Liest den Navigationssatz einer History-Position direkt aus dem Log.
+     *
+     * @return Der Satz oder null, wenn er nicht lesbar ist (beschädigtes Log)
+     */
+    public synchronized Entry entryAt(int position) {
+        if (position < 0 || position >= size()) throw new IndexOutOfBoundsException(position);
+        try {
+            return readEntry(logChannel, index.getLong(HEADER_BYTES + position * 8));
+        } catch (IOException e) {
+            System.err.println("Sitzungsjournal: Satz an Position " + position + " nicht lesbar: " + e.getMessage());
+            return null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Files
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void open() throws IOException {
+        Path logFile = directory.resolve(LOG_FILE);
+        logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logSize = logChannel.size();
+        logChannel.position(logSize);
+        log = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(logChannel), 8 * 1024));
+
+        indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = indexChannel.size() < HEADER_BYTES;
+        capacity = fresh ? INITIAL_CAPACITY : (int) ((indexChannel.size() - HEADER_BYTES) / 8);
+        map();
+        if (fresh || index.getInt(0) != MAGIC) {
+            index.putInt(0, MAGIC).putInt(4, 0).putInt(8, -1);
+        }
+
+        // Positionen ab dem ersten Satz, der nicht (vollständig) lesbar im Log steht, verwerfen (z. B. nach einem Absturz)
+        int valid = 0;
+        while (valid < Math.min(size(), capacity) && isReadable(index.getLong(HEADER_BYTES + valid * 8))) valid++;
+        index.putInt(4, valid);
+        if (current() >= valid || current() < -1) index.putInt(8, valid - 1);
+    }
+
+    private void map() throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + capacity * 8L);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) return;
+        try {
+            index.force();
+            while (capacity < required) capacity *= 2;
+            map(); // Größeres Mapping vergrößert die Datei, der Inhalt bleibt erhalten
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Offset des Satzes im Log
+     */
+    private long append(Entry entry) {
+        try {
+            byte[] record = encode(entry);
+            long offset = logSize;
+            log.writeInt(record.length);
+            log.write(record);
+            log.flush();
+            logSize += 4 + record.length;
+            return offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sitzungsjournal konnte nicht geschrieben werden", e);
+        }
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.url().length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(entry.type().ordinal());
+        out.writeLong(entry.timestamp());
+        out.writeInt(entry.durationMillis());
+        out.writeUTF(fitUtf(entry.url()));
+        out.writeUTF(fitUtf(entry.detail()));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Kürzt Texte, die für {@code writeUTF} zu lang sind (z. B. data:-URLs), statt beim Schreiben zu scheitern.
+     */
+    private static String fitUtf(String text) {
+        if (text.length() * 3 <= MAX_UTF_BYTES) return text;
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            bytes += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3; // Modified UTF-8 wie writeUTF
+            if (bytes > MAX_UTF_BYTES) {
+                if (i > 0 && Character.isHighSurrogate(text.charAt(i - 1))) i--; // Kein halbes Zeichen
+                System.err.println("Sitzungsjournal: Text mit " + text.length() + " Zeichen gekürzt.");
+                return text.substring(0, i);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Liest einen Satz. Beschädigte oder abgeschnittene Sätze (z. B. nach einem Absturz) führen zu einer
+     * {@link IOException}, nie zu einer Laufzeitausnahme.
+     */
+    private static Entry readEntry(FileChannel channel, long offset) throws IOException {
+        long available = channel.size() - offset - 4;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        if (offset < 0 || available < 0 || channel.read(length, offset) < 4) {
+            throw new IOException("Satz bei Offset " + offset + " liegt hinter dem Ende des Logs");
+        }
+        int recordLength = length.flip().getInt();
+        if (recordLength < MIN_RECORD_BYTES || recordLength > available) {
+            throw new IOException("Ungültige Satzlänge " + recordLength + " bei Offset " + offset);
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        while (record.hasRemaining() && channel.read(record, offset + 4 + record.position()) > 0) {
+            // Bis der Satz vollständig gelesen ist
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+        int type = in.readByte();
+        if (type < 0 || type >= Type.values().length) {
+            throw new IOException("Unbekannter Satztyp " + type + " bei Offset " + offset);
+        }
+        return new Entry(Type.values()[type], in.readLong(), in.readInt(), in.readUTF(), in.readUTF());
+    }
+
+    private boolean isReadable(long offset) {
+        try {
+            readEntry(logChannel, offset);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Schreibt Log und Index neu, wenn das Log zu groß geworden ist: übrig bleiben die Navigationen der History.
+     * Läuft vor dem Öffnen ohne Memory-Mapping, damit die alten Dateien auch unter Windows ersetzt werden können.
+     */
+    private void compactIfLarger(long maxLogBytes) throws IOException {
+        Path logFile = directory.resolve(LOG_FILE);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(logFile) || Files.size(logFile) <= maxLogBytes || !Files.exists(indexFile)) return;
+
+        Path newLog = directory.resolve(LOG_FILE + ".tmp");
+        Path newIndex = directory.resolve(INDEX_FILE + ".tmp");
+        int size;
+        try (FileChannel oldLog = FileChannel.open(logFile, StandardOpenOption.READ);
+             FileChannel oldIndex = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            oldIndex.read(header, 0);
+            if (header.getInt(0) != MAGIC) return;
+            // Länge auf die tatsächlich vorhandenen Offsets begrenzen (beschädigter Kopf)
+            size = Math.max(0, (int) Math.min(header.getInt(4), (oldIndex.size() - HEADER_BYTES) / 8));
+            int current = header.getInt(8);
+
+            ByteBuffer offsets = ByteBuffer.allocate(size * 8);
+            oldIndex.read(offsets, HEADER_BYTES);
+            ByteBuffer table = ByteBuffer.allocate(HEADER_BYTES + Math.max(size, INITIAL_CAPACITY) * 8);
+            table.putInt(0, MAGIC).putInt(4, size).putInt(8, current);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(newLog)))) {
+                long position = 0;
+                for (int i = 0; i < size; i++) {
+                    byte[] record;
+                    try {
+                        record = encode(readEntry(oldLog, offsets.getLong(i * 8)));
+                    } catch (IOException e) {
+                        // Ab dem ersten beschädigten Satz wird die History abgeschnitten
+                        System.err.println("Sitzungsjournal: " + e.getMessage() + ", History endet bei " + i);
+                        size = i;
+                        table.putInt(4, size).putInt(8, Math.min(current, size - 1));
+                        break;
+                    }
+                    out.writeInt(record.length);
+                    out.write(record);
+                    table.putLong(HEADER_BYTES + i * 8, position);
+                    position += 4 + record.length;
+                }
+            }
+            try (FileChannel out = FileChannel.open(newIndex, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                out.write(table.rewind());
+            }
+        }
+        Files.move(newLog, logFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(newIndex, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Sitzungsjournal verkleinert auf " + size + " Navigationen.");
+    }
+}
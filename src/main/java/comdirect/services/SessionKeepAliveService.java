@@ -0,0 +1,226 @@
+package comdirect.services;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hält die Bank-Session am Leben, damit nach einer Pause nicht der komplette Login inkl. TAN nötig wird.
+ * <p>
+ * Pro {@link BrowserContext} wird die letzte Aktivität (abgeschlossene Anfragen an den Bank-Host) festgehalten.
+ * Ein einzelner Timer-Thread prüft alle Sessions und schickt kurz vor dem serverseitigen Timeout eine leichte
+ * HTTP-Anfrage mit den Cookies des Kontexts (kein Rendering). Nur das Auslesen der Cookies läuft unter dem Monitor
+ * von {@link BrowseService}, die Anfrage selbst hält keine Navigation auf. Eine Umleitung auf die Login-Seite gilt
+ * als Session-Verlust und wird an die registrierten Listener gemeldet; andere Fehler (z. B. ein kurzzeitiges 502)
+ * werden protokolliert und beim nächsten Tick erneut versucht.
+ */
+@Service
+public class SessionKeepAliveService {
+    private static final long TICK_SECONDS = 5;
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final BrowseService browseService;
+
+    private final ComdirectConfig config;
+
+    private final Map<BrowserContext, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final List<Consumer<BrowserContext>> sessionLostListeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService timer;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+
+    public SessionKeepAliveService(BrowseService browseService, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void start() {
+        browseService.addContextListener(this::track);
+        if (!config.getSession().isKeepAlive()) return;
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-keep-alive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer != null) timer.shutdownNow();
+    }
+
+    /**
+     * Verbleibende Zeit bis zum serverseitigen Timeout der aktuellen Session.
+     *
+     * @return Restzeit oder {@link Duration#ZERO}, wenn keine aktive Session besteht
+     */
+    public Duration getTimeUntilExpiry() {
+        return getTimeUntilExpiry(browseService.context);
+    }
+
+    public Duration getTimeUntilExpiry(BrowserContext context) {
+        SessionState state = context == null ? null : sessions.get(context);
+        if (state == null || !state.active) return Duration.ZERO;
+        long remaining = state.lastActivity + timeoutMillis() - System.currentTimeMillis();
+        return Duration.ofMillis(Math.max(0, remaining));
+    }
+
+    public boolean isSessionActive(BrowserContext context) {
+        SessionState state = context == null ? null : sessions.get(context);
+        return state != null && state.active && !getTimeUntilExpiry(context).isZero();
+    }
+
+    /**
+     * Zeitpunkt der letzten Aktivität im Kontext (Millisekunden seit Epoch) oder 0, falls unbekannt.
+     */
+    public long getLastActivity(BrowserContext context) {
+        SessionState state = context == null ? null : sessions.get(context);
+        return state == null ? 0 : state.lastActivity;
+    }
+
+    /**
+     * Listener werden auf dem Timer- bzw. Playwright-Thread aufgerufen, wenn eine Session verloren geht.
+     */
+    public void addSessionLostListener(Consumer<BrowserContext> listener) {
+        sessionLostListeners.add(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Activity Tracking (läuft auf dem Playwright-Thread, daher nur Feldzuweisungen)
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void track(BrowserContext context) {
+        SessionState state = new SessionState();
+        sessions.put(context, state);
+        String bankHost = bankHost();
+
+        context.onRequestFinished(request -> {
+            if (bankHost == null || request.url().contains(bankHost)) {
+                state.lastActivity = System.currentTimeMillis();
+            }
+        });
+        context.pages().forEach(page -> trackNavigations(context, page, state));
+        context.onPage(page -> trackNavigations(context, page, state));
+        context.onClose(closed -> sessions.remove(closed));
+    }
+
+    private void trackNavigations(BrowserContext context, Page page, SessionState state) {
+        page.onFrameNavigated(frame -> {
+            if (frame.parentFrame() != null) return;
+            String url = frame.url();
+            if (matches(url, config.getSession().getLoginUrlPattern())) {
+                if (state.active) sessionLost(context, state, url);
+            } else if (matches(url, config.getSession().getAuthenticatedUrlPattern())) {
+                state.active = true;
+                state.lastActivity = System.currentTimeMillis();
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Keep-Alive
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void tick() {
+        long margin = config.getSession().getKeepAliveMarginSeconds() * 1000L;
+        for (Map.Entry<BrowserContext, SessionState> entry : sessions.entrySet()) {
+            SessionState state = entry.getValue();
+            if (state.active && getTimeUntilExpiry(entry.getKey()).toMillis() <= margin) {
+                keepAlive(entry.getKey(), state);
+            }
+        }
+    }
+
+    private void keepAlive(BrowserContext context, SessionState state) {
+        String url = config.getSession().getKeepAliveUrl();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .header("User-Agent", browseService.getUserAgent())
+                    .header("Cookie", browseService.cookieHeader(context, url))
+                    .timeout(REQUEST_TIMEOUT)
+                    .GET()
+                    .build();
+            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+            String finalUrl = response.uri().toString();
+
+            if (matches(finalUrl, config.getSession().getLoginUrlPattern())) {
+                sessionLost(context, state, finalUrl);
+            } else if (response.statusCode() >= 400) {
+                // Kein Session-Verlust: Restzeit bleibt unverändert, der nächste Tick versucht es erneut
+                System.err.println("Keep-Alive fehlgeschlagen (" + response.statusCode() + "), neuer Versuch in "
+                        + TICK_SECONDS + " s: " + finalUrl);
+            } else {
+                state.lastActivity = System.currentTimeMillis();
+                System.out.println("Session verlängert, Restzeit: " + getTimeUntilExpiry(context).toSeconds() + " s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Keep-Alive fehlgeschlagen: " + e.getMessage());
+        }
+    }
+
+    private void sessionLost(BrowserContext context, SessionState state, String url) {
+        state.active = false;
+        System.out.println("Session verloren (Umleitung auf " + url + ")");
+        for (Consumer<BrowserContext> listener : sessionLostListeners) {
+            try {
+                listener.accept(context);
+            } catch (Exception e) {
+                System.err.println("Fehler in einem Session-Listener: " + e.getMessage());
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private long timeoutMillis() {
+        return config.getSession().getTimeoutSeconds() * 1000L;
+    }
+
+    private String bankHost() {
+        try {
+            String url = config.getSession().getKeepAliveUrl();
+            return url == null ? null : URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean matches(String url, String pattern) {
+        return url != null && pattern != null && !pattern.isEmpty() && url.contains(pattern);
+    }
+
+    private static class SessionState {
+        volatile long lastActivity = System.currentTimeMillis();
+        volatile boolean active;
+    }
+}
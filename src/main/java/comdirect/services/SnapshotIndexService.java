@@ -0,0 +1,294 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Service;
+import util.InvertedIndex;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Volltextsuche über die besuchten Seiten.
+ * <p>
+ * Jeder Snapshot aus {@link BrowseService} landet in einer begrenzten Warteschlange (ist sie voll, wird er
+ * verworfen) und wird auf einem eigenen Thread mit Jsoup auf den sichtbaren Text reduziert, tokenisiert und in den
+ * {@link InvertedIndex} aufgenommen. URL, Titel und ein gekürzter Text für Snippets stehen in einem
+ * Dokument-Log daneben. Pro URL zählt nur der neueste Stand, über {@code maxDocuments} hinaus fallen die ältesten
+ * Seiten heraus; beim Zusammenführen der Segmente werden beide aus Index und Log entfernt.
+ */
+@Service
+public class SnapshotIndexService {
+    private static final String DOCUMENT_LOG = "documents.log";
+
+    private static final int SNIPPET_BEFORE = 60;
+
+    private static final int SNIPPET_AFTER = 100;
+
+    private final BrowseService browseService;
+
+    private final ComdirectConfig.SearchConfig config;
+
+    private final ConcurrentSkipListMap<Integer, IndexedPage> documents = new ConcurrentSkipListMap<>(); // docId -> Seite
+
+    private final Map<String, Integer> latestByUrl = new ConcurrentHashMap<>();
+
+    private final Set<Integer> recovered = new HashSet<>(); // Nur aus dem gekürzten Text wiederhergestellt
+
+    private BlockingQueue<PendingSnapshot> queue;
+
+    private InvertedIndex index;
+
+    private DataOutputStream documentLog;
+
+    private int nextDocId;
+
+    private volatile boolean running;
+
+    private Thread indexer;
+
+    public SnapshotIndexService(BrowseService browseService, ComdirectConfig config) {
+        this.browseService = browseService;
+        this.config = config.getSearch();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) return;
+        try {
+            Path directory = Path.of(config.getDirectory());
+            index = new InvertedIndex(directory, config.getFlushPostings());
+            loadDocuments(directory.resolve(DOCUMENT_LOG));
+            recoverPostings();
+            documentLog = openDocumentLog(directory.resolve(DOCUMENT_LOG));
+        } catch (IOException e) {
+            System.err.println("Suchindex konnte nicht geöffnet werden: " + e.getMessage());
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueSize()));
+        running = true;
+        indexer = new Thread(this::indexLoop, "snapshot-indexer");
+        indexer.setDaemon(true);
+        indexer.setPriority(Thread.MIN_PRIORITY);
+        indexer.start();
+
+        browseService.addSnapshotListener(this::offer);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (indexer == null) return;
+        indexer.interrupt();
+        try {
+            indexer.join(2000);
+            synchronized (this) {
+                index.close();
+                documentLog.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Suchindex konnte nicht geschlossen werden: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sucht in den besuchten Seiten.
+     *
+     * @param query Suchbegriffe (ODER-verknüpft, Treffer mit mehreren Begriffen stehen weiter oben)
+     * @param limit Maximale Anzahl Treffer
+     * @return Treffer absteigend nach Relevanz
+     */
+    public List<SearchHit> search(String query, int limit) {
+        List<String> terms = InvertedIndex.tokenize(query);
+        if (index == null || terms.isEmpty()) return List.of();
+
+        Map<Integer, Double> scores = index.search(terms, documents::containsKey);
+        List<SearchHit> hits = new ArrayList<>();
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            IndexedPage page = documents.get(entry.getKey());
+            if (page == null) continue;
+            hits.add(new SearchHit(page.url(), page.title(), snippet(page.text(), terms), entry.getValue(), page.timestamp()));
+        }
+        hits.sort(Comparator.comparingDouble(SearchHit::score).reversed().thenComparing(Comparator.comparingLong(SearchHit::timestamp).reversed()));
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Indexing (eigener Thread)
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Läuft auf dem Playwright-Thread: nur ablegen, nie blockieren.
+     */
+    private void offer(String url, String html) {
+        if (url == null || !url.startsWith("http")) return;
+        if (!queue.offer(new PendingSnapshot(url, html, System.currentTimeMillis()))) {
+            System.out.println("Suchindex ausgelastet, Snapshot verworfen: " + url);
+        }
+    }
+
+    private void indexLoop() {
+        while (running) {
+            try {
+                index(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Fehler beim Indizieren: " + e.getMessage());
+            }
+        }
+    }
+
+    private void index(PendingSnapshot snapshot) throws IOException {
+        Document document = Jsoup.parse(snapshot.html(), snapshot.url());
+        String text = document.body() != null ? document.body().text() : "";
+        String storedText = text.length() > config.getTextChars() ? text.substring(0, config.getTextChars()) : text;
+
+        Integer previousId = latestByUrl.get(snapshot.url());
+        IndexedPage previous = previousId != null ? documents.get(previousId) : null;
+        if (previous != null && previous.text().equals(storedText) && !recovered.contains(previousId)) {
+            return; // Unverändert, nicht erneut aufnehmen
+        }
+
+        List<String> tokens = InvertedIndex.tokenize(document.title() + " " + text);
+        if (tokens.isEmpty()) return;
+
+        IndexedPage page = new IndexedPage(nextDocId++, snapshot.url(), document.title(), storedText, snapshot.timestamp());
+        synchronized (this) {
+            writeDocument(documentLog, page);
+            documentLog.flush();
+            index.add(page.docId(), tokens);
+        }
+        accept(page);
+
+        if (index.segmentCount() > config.getMaxSegments()) {
+            long start = System.currentTimeMillis();
+            index.merge(documents::containsKey);
+            compactDocumentLog();
+            System.out.println("Suchindex zusammengeführt in " + (System.currentTimeMillis() - start) + " ms, "
+                    + documents.size() + " Seiten.");
+        }
+    }
+
+    /**
+     * Nimmt eine Seite in die gültigen Dokumente auf: ersetzt den alten Stand derselben URL und hält das Limit ein.
+     */
+    private void accept(IndexedPage page) {
+        Integer previousId = latestByUrl.put(page.url(), page.docId());
+        if (previousId != null) documents.remove(previousId);
+        documents.put(page.docId(), page);
+        while (documents.size() > config.getMaxDocuments()) {
+            Map.Entry<Integer, IndexedPage> oldest = documents.pollFirstEntry();
+            latestByUrl.remove(oldest.getValue().url(), oldest.getKey());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Document log
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void loadDocuments(Path file) throws IOException {
+        if (!Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                IndexedPage page = new IndexedPage(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+                accept(page);
+                nextDocId = Math.max(nextDocId, page.docId() + 1);
+            }
+        } catch (EOFException e) {
+            // Ende des Logs (ein abgeschnittener letzter Eintrag wird ignoriert)
+        }
+    }
+
+    /**
+     * Das Log wird pro Seite geschrieben, die Postings erst ab {@code flushPostings} oder beim Beenden. Seiten, deren
+     * Postings bei einem Absturz noch im Speicher lagen, werden aus dem gespeicherten Text neu aufgenommen. Da dieser
+     * gekürzt ist, werden sie beim nächsten Besuch auch bei unverändertem Text vollständig neu indiziert.
+     */
+    private void recoverPostings() throws IOException {
+        int limit = index.persistedDocIdLimit();
+        for (IndexedPage page : documents.tailMap(limit).values()) {
+            index.add(page.docId(), InvertedIndex.tokenize(page.title() + " " + page.text()));
+            recovered.add(page.docId());
+        }
+        if (recovered.isEmpty()) return;
+        index.flush();
+        System.out.println("Suchindex: " + recovered.size() + " Seiten ohne Postings wiederhergestellt.");
+    }
+
+    private static DataOutputStream openDocumentLog(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private static void writeDocument(DataOutputStream out, IndexedPage page) throws IOException {
+        out.writeInt(page.docId());
+        out.writeUTF(page.url());
+        out.writeUTF(page.title());
+        out.writeUTF(page.text());
+        out.writeLong(page.timestamp());
+    }
+
+    /**
+     * Schreibt das Log neu und behält nur die gültigen Dokumente.
+     */
+    private synchronized void compactDocumentLog() throws IOException {
+        Path file = Path.of(config.getDirectory(), DOCUMENT_LOG);
+        Path temp = Path.of(config.getDirectory(), DOCUMENT_LOG + ".tmp");
+        documentLog.close();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (IndexedPage page : documents.values()) writeDocument(out, page);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        documentLog = openDocumentLog(file);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static String snippet(String text, List<String> terms) {
+        String lower = text.toLowerCase(Locale.GERMAN);
+        int position = -1;
+        for (String term : terms) {
+            int found = lower.indexOf(term);
+            if (found >= 0 && (position < 0 || found < position)) position = found;
+        }
+        if (position < 0) return text.length() > SNIPPET_AFTER ? text.substring(0, SNIPPET_AFTER) + "…" : text;
+
+        int start = Math.max(0, position - SNIPPET_BEFORE);
+        int end = Math.min(text.length(), position + SNIPPET_AFTER);
+        return (start > 0 ? "…" : "") + text.substring(start, end) + (end < text.length() ? "…" : "");
+    }
+
+    private record PendingSnapshot(String url, String html, long timestamp) {
+    }
+
+    private record IndexedPage(int docId, String url, String title, String text, long timestamp) {
+    }
+}
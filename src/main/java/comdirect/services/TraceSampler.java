@@ -0,0 +1,191 @@
+package comdirect.services;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Tracing;
+import comdirect.config.ComdirectConfig;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Tail-Sampling für Playwright-Traces: Tracing läuft dauerhaft, gespeichert wird aber nur, was auffällt.
+ * <p>
+ * Jede Navigation bildet einen eigenen Trace-Chunk. Dauert sie länger als {@code thresholdMs} oder schlägt sie
+ * fehl, wird der Chunk (Screenshots, Netzwerk, DOM-Snapshots) als ZIP gespeichert, sonst verworfen. Das
+ * Trace-Verzeichnis wird auf {@code maxTraces} Dateien und {@code maxTotalMb} begrenzt, die ältesten fliegen
+ * zuerst. Aktionen mit Zugangsdaten (Login, Formulare mit Feldern aus {@code network.scrubParams}) werden nie
+ * gespeichert: Screenshots, DOM-Snapshots und die Argumente von {@code page.evaluate} enthielten sie im Klartext. Die Traces lassen sich mit {@code playwright show-trace <datei>} ansehen.
+ */
+@Component
+public class TraceSampler {
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final ComdirectConfig.TracingConfig config;
+
+    private final List<String> sensitiveFields;
+
+    private BrowserContext tracedContext;
+
+    private int depth;
+
+    private boolean discardChunk; // Aktueller Chunk enthält eine vertrauliche Aktion
+
+    public TraceSampler(ComdirectConfig config) {
+        this.config = config.getTracing();
+        this.sensitiveFields = config.getNetwork().getScrubParams();
+    }
+
+    /**
+     * @return true, wenn eines der Felder zu den vertraulichen Parametern ({@code network.scrubParams}) gehört
+     */
+    public boolean isSensitive(Collection<String> fieldNames) {
+        for (String name : fieldNames) {
+            for (String sensitive : sensitiveFields) {
+                if (sensitive.equalsIgnoreCase(name)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Startet das Tracing für einen neuen Kontext (ohne Export, Chunks werden pro Aktion gebildet).
+     */
+    public void start(BrowserContext context) {
+        if (!config.isEnabled()) return;
+        try {
+            context.tracing().start(new Tracing.StartOptions()
+                    .setScreenshots(config.isScreenshots())
+                    .setSnapshots(config.isSnapshots()));
+            tracedContext = context;
+        } catch (Exception e) {
+            tracedContext = null;
+            System.err.println("Tracing konnte nicht gestartet werden: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Führt eine Aktion in einem eigenen Trace-Chunk aus. Verschachtelte Aufrufe landen im Chunk der äußeren Aktion.
+     *
+     * @param context Kontext, in dem die Aktion läuft
+     * @param action  Bezeichnung für Chunk-Titel und Dateiname
+     */
+    public <T> T sample(BrowserContext context, String action, Supplier<T> body) {
+        return sample(context, action, false, body);
+    }
+
+    /**
+     * @param sensitive true für Aktionen mit Zugangsdaten: der Chunk wird in jedem Fall verworfen
+     */
+    public <T> T sample(BrowserContext context, String action, boolean sensitive, Supplier<T> body) {
+        if (sensitive) discardChunk = true; // Gilt auch für den Chunk einer äußeren Aktion
+        if (context == null || context != tracedContext || depth > 0) {
+            depth++;
+            try {
+                return body.get();
+            } finally {
+                depth--;
+            }
+        }
+
+        depth++;
+        discardChunk = sensitive;
+        boolean chunkStarted = startChunk(context, action);
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        try {
+            T result = body.get();
+            failed = false;
+            return result;
+        } finally {
+            depth--;
+            if (chunkStarted) {
+                long duration = System.currentTimeMillis() - start;
+                stopChunk(context, action, duration, failed);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static boolean startChunk(BrowserContext context, String action) {
+        try {
+            context.tracing().startChunk(new Tracing.StartChunkOptions().setTitle(action));
+            return true;
+        } catch (Exception e) {
+            System.err.println("Trace-Chunk konnte nicht gestartet werden: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void stopChunk(BrowserContext context, String action, long duration, boolean failed) {
+        try {
+            if (discardChunk) {
+                // Zugangsdaten: nie auf die Platte, auch nicht bei Fehler oder Langsamkeit
+                discardChunk = false;
+                context.tracing().stopChunk();
+                return;
+            }
+            if (!failed && duration < config.getThresholdMs()) {
+                // Schneller Normalfall: Chunk verwerfen
+                context.tracing().stopChunk();
+                return;
+            }
+
+            Path directory = Path.of(config.getDirectory());
+            Files.createDirectories(directory);
+            Path file = directory.resolve(FILE_TIMESTAMP.format(LocalDateTime.now()) + "_"
+                    + sanitize(action) + "_" + (failed ? "failed" : duration + "ms") + ".zip");
+            context.tracing().stopChunk(new Tracing.StopChunkOptions().setPath(file));
+            System.out.println("Trace gespeichert (" + (failed ? "Fehler" : duration + " ms") + "): " + file.toAbsolutePath());
+            prune(directory);
+        } catch (Exception e) {
+            System.err.println("Trace-Chunk konnte nicht beendet werden: " + e.getMessage());
+        }
+    }
+
+    private void prune(Path directory) throws IOException {
+        List<Path> traces;
+        try (Stream<Path> files = Files.list(directory)) {
+            traces = new ArrayList<>(files.filter(file -> file.toString().endsWith(".zip"))
+                    .sorted(Comparator.comparing(TraceSampler::lastModified))
+                    .toList());
+        }
+
+        long maxBytes = config.getMaxTotalMb() * 1024L * 1024L;
+        long totalBytes = 0;
+        for (Path trace : traces) {
+            totalBytes += Files.size(trace);
+        }
+
+        while (!traces.isEmpty() && (traces.size() > config.getMaxTraces() || totalBytes > maxBytes)) {
+            Path oldest = traces.remove(0);
+            totalBytes -= Files.size(oldest);
+            Files.deleteIfExists(oldest);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String sanitize(String action) {
+        String cleaned = action.replaceAll("[^A-Za-z0-9._-]+", "_");
+        return cleaned.length() > 60 ? cleaned.substring(0, 60) : cleaned;
+    }
+}
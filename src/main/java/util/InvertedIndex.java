@@ -0,0 +1,493 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Inkrementeller invertierter Index (Term -> Dokumente mit Termhäufigkeit) mit Segmenten auf der Platte.
+ * <p>
+ * Neue Dokumente landen zunächst in einem Segment im Speicher. Ab {@code flushThreshold} Postings wird es sortiert
+ * als unveränderliche Datei geschrieben und per Memory-Mapping gelesen: Wörterbuch und Postings bleiben außerhalb
+ * des Heaps, die Suche springt per Binärsuche über eine Offset-Tabelle direkt zum Term. Postings sind als
+ * Varint-Deltas der Dokument-IDs kodiert. {@link #merge} fasst alle Segmente zu einem zusammen und lässt dabei
+ * nicht mehr gültige Dokumente weg. Welche Segmente gültig sind, steht in einer Manifest-Datei; verwaiste
+ * Segmente (z. B. nach einem Absturz während des Mergens) werden beim Öffnen gelöscht.
+ * <p>
+ * Dokument-IDs müssen aufsteigend vergeben werden. Speicherung von Texten und URLs ist Sache des Aufrufers.
+ */
+public final class InvertedIndex implements Closeable {
+    private static final int MAGIC = 0x49445831; // "IDX1"
+    private static final int HEADER_BYTES = 32;
+    private static final String MANIFEST = "segments";
+
+    private final Path directory;
+
+    private final int flushThreshold;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    private TreeMap<String, Postings> memory = new TreeMap<>();
+
+    private int memoryPostings;
+
+    private int memoryDocs;
+
+    private long nextGeneration;
+
+    /**
+     * @param directory      Verzeichnis der Segmente (wird angelegt)
+     * @param flushThreshold Anzahl Postings, ab der das Speichersegment auf die Platte geschrieben wird
+     */
+    public InvertedIndex(Path directory, int flushThreshold) throws IOException {
+        this.directory = directory;
+        this.flushThreshold = Math.max(1, flushThreshold);
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Zerlegt Text in Suchbegriffe: Kleinschreibung, Trennung an allem außer Buchstaben und Ziffern, Länge 2 bis 40.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        String lower = text.toLowerCase(Locale.GERMAN);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int length = i - start;
+                if (length >= 2 && length <= 40) tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Nimmt ein Dokument auf. Schreibt das Speichersegment, sobald es die Schwelle erreicht.
+     *
+     * @param docId  Größer als alle bisher vergebenen IDs
+     * @param tokens Begriffe des Dokuments (Wiederholungen zählen als Termhäufigkeit)
+     */
+    public synchronized void add(int docId, Collection<String> tokens) throws IOException {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) frequencies.merge(token, 1, Integer::sum);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            memory.computeIfAbsent(entry.getKey(), term -> new Postings()).add(docId, entry.getValue());
+        }
+        memoryPostings += frequencies.size();
+        memoryDocs++;
+        if (memoryPostings >= flushThreshold) flush();
+    }
+
+    /**
+     * Schreibt das Speichersegment als neues Segment auf die Platte.
+     */
+    public synchronized void flush() throws IOException {
+        if (memory.isEmpty()) return;
+        Path file = writeSegment(new SegmentWriter(nextGeneration++), memoryDocs, memory);
+        segments.add(Segment.open(file));
+        writeManifest();
+        memory = new TreeMap<>();
+        memoryPostings = 0;
+        memoryDocs = 0;
+    }
+
+    /**
+     * Sucht Dokumente, die mindestens einen der Begriffe enthalten, und bewertet sie nach TF-IDF.
+     *
+     * @param terms Bereits tokenisierte Suchbegriffe
+     * @param live  Filter für noch gültige Dokumente
+     * @return Dokument-ID -> Score
+     */
+    public synchronized Map<Integer, Double> search(Collection<String> terms, IntPredicate live) {
+        long totalDocs = memoryDocs;
+        for (Segment segment : segments) totalDocs += segment.docCount;
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : new HashSet<>(terms)) {
+            List<int[]> matches = new ArrayList<>(); // {docId, tf}
+            for (Segment segment : segments) segment.postings(term, (docId, tf) -> matches.add(new int[]{docId, tf}));
+            Postings inMemory = memory.get(term);
+            if (inMemory != null) inMemory.forEach((docId, tf) -> matches.add(new int[]{docId, tf}));
+            if (matches.isEmpty()) continue;
+
+            double idf = Math.log(1.0 + (double) totalDocs / matches.size());
+            for (int[] match : matches) {
+                if (!live.test(match[0])) continue;
+                scores.merge(match[0], (1.0 + Math.log(match[1])) * idf, Double::sum);
+            }
+        }
+        return scores;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return Alle Dokumente mit kleinerer ID stehen in Segmenten auf der Platte; Dokumente ab dieser ID lagen
+     * höchstens im Speichersegment und fehlen nach einem Absturz
+     */
+    public synchronized int persistedDocIdLimit() {
+        int limit = 0;
+        for (Segment segment : segments) limit = Math.max(limit, segment.docIdLimit);
+        return limit;
+    }
+
+    /**
+     * Fasst alle Segmente auf der Platte zu einem zusammen und verwirft Postings ungültiger Dokumente. Das Schreiben
+     * läuft ohne Sperre, Suchen und neue Dokumente werden währenddessen nicht blockiert.
+     *
+     * @param live Filter für noch gültige Dokumente
+     */
+    public void merge(IntPredicate live) throws IOException {
+        List<Segment> sources;
+        long generation;
+        synchronized (this) {
+            if (segments.size() < 2) return;
+            sources = new ArrayList<>(segments);
+            generation = nextGeneration++;
+        }
+
+        // Begriffe aller Segmente sortiert durchlaufen (k-Wege-Merge über die Wörterbücher)
+        SegmentWriter writer = new SegmentWriter(generation);
+        Set<Integer> liveDocs = new HashSet<>();
+        PriorityQueue<TermCursor> queue = new PriorityQueue<>();
+        for (int i = 0; i < sources.size(); i++) {
+            TermCursor cursor = new TermCursor(sources.get(i), i);
+            if (cursor.advance()) queue.add(cursor);
+        }
+        while (!queue.isEmpty()) {
+            String term = queue.peek().term;
+            List<TermCursor> sameTerm = new ArrayList<>();
+            while (!queue.isEmpty() && queue.peek().term.equals(term)) sameTerm.add(queue.poll());
+            sameTerm.sort((a, b) -> Integer.compare(a.order, b.order)); // Ältere Segmente zuerst, IDs bleiben aufsteigend
+
+            Postings merged = new Postings();
+            for (TermCursor cursor : sameTerm) {
+                cursor.segment.postings(term, (docId, tf) -> {
+                    if (live.test(docId)) {
+                        merged.add(docId, tf);
+                        liveDocs.add(docId);
+                    }
+                });
+                if (cursor.advance()) queue.add(cursor);
+            }
+            if (merged.size > 0) writer.term(term, merged);
+        }
+        Path file = writer.finish(liveDocs.size());
+
+        synchronized (this) {
+            segments.removeAll(sources);
+            segments.add(0, Segment.open(file));
+            writeManifest();
+        }
+        for (Segment source : sources) {
+            try {
+                Files.deleteIfExists(source.file);
+            } catch (IOException e) {
+                // Unter Windows noch gemappt: wird beim nächsten Öffnen als verwaist gelöscht
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        segments.clear();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Segment files
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void open() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        List<String> names = Files.exists(manifest) ? Files.readAllLines(manifest) : List.of();
+        for (String name : names) {
+            if (name.isBlank()) continue;
+            Path file = directory.resolve(name.trim());
+            if (Files.exists(file)) segments.add(Segment.open(file));
+            nextGeneration = Math.max(nextGeneration, generationOf(name.trim()) + 1);
+        }
+
+        // Nicht im Manifest: Reste eines abgebrochenen Merges oder nicht löschbare alte Segmente
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if ((name.endsWith(".seg") || name.endsWith(".tmp")) && !names.contains(name)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Nächster Versuch beim nächsten Öffnen
+                    }
+                    if (name.endsWith(".seg")) nextGeneration = Math.max(nextGeneration, generationOf(name) + 1);
+                }
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        Files.write(temp, segments.stream().map(segment -> segment.file.getFileName().toString()).toList());
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long generationOf(String name) {
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('.')), 16);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private Path writeSegment(SegmentWriter writer, int docCount, TreeMap<String, Postings> terms) throws IOException {
+        for (Map.Entry<String, Postings> entry : terms.entrySet()) writer.term(entry.getKey(), entry.getValue());
+        return writer.finish(docCount);
+    }
+
+    /**
+     * Schreibt ein Segment: Kopf, Postings, Wörterbuch (Term, Offset, Länge, Dokumentfrequenz) und eine
+     * Offset-Tabelle der Wörterbucheinträge für die Binärsuche. Begriffe müssen sortiert übergeben werden.
+     */
+    private final class SegmentWriter {
+        private final Path file;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final List<byte[]> dictionaryTerms = new ArrayList<>();
+        private final List<long[]> dictionaryValues = new ArrayList<>(); // {offset, length, docFreq}
+        private long position = HEADER_BYTES;
+        private int docIdLimit;
+
+        SegmentWriter(long generation) throws IOException {
+            String name = String.format("%016x", generation);
+            file = directory.resolve(name + ".seg");
+            temp = directory.resolve(name + ".tmp");
+            OutputStream stream = Files.newOutputStream(temp);
+            out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.write(new byte[HEADER_BYTES]); // Kopf wird am Ende geschrieben
+        }
+
+        void term(String term, Postings postings) throws IOException {
+            byte[] encoded = postings.encode();
+            out.write(encoded);
+            dictionaryTerms.add(term.getBytes(StandardCharsets.UTF_8));
+            dictionaryValues.add(new long[]{position, encoded.length, postings.size});
+            position += encoded.length;
+            if (postings.size > 0) docIdLimit = Math.max(docIdLimit, postings.docIds[postings.size - 1] + 1);
+        }
+
+        Path finish(int docCount) throws IOException {
+            long dictionaryStart = position;
+            int[] entryOffsets = new int[dictionaryTerms.size()];
+            for (int i = 0; i < dictionaryTerms.size(); i++) {
+                if (position > Integer.MAX_VALUE) throw new IOException("Segment zu groß");
+                entryOffsets[i] = (int) position;
+                byte[] term = dictionaryTerms.get(i);
+                long[] values = dictionaryValues.get(i);
+                out.writeShort(term.length);
+                out.write(term);
+                out.writeLong(values[0]);
+                out.writeInt((int) values[1]);
+                out.writeInt((int) values[2]);
+                position += 2 + term.length + 8 + 4 + 4;
+            }
+            long tableStart = position;
+            for (int offset : entryOffsets) out.writeInt(offset);
+            out.close();
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(docCount).putInt(entryOffsets.length).putInt(docIdLimit)
+                        .putLong(dictionaryStart).putLong(tableStart).flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final int docCount;
+        final int termCount;
+        final int tableStart;
+        final int docIdLimit; // Größte Dokument-ID + 1
+
+        private Segment(Path file, MappedByteBuffer buffer) throws IOException {
+            this.file = file;
+            this.buffer = buffer;
+            if (buffer.getInt(0) != MAGIC) throw new IOException("Kein Index-Segment: " + file);
+            this.docCount = buffer.getInt(4);
+            this.termCount = buffer.getInt(8);
+            this.tableStart = (int) buffer.getLong(24);
+            // Ältere Segmente haben das Feld noch nicht (0): einmalig aus den Postings ermitteln
+            this.docIdLimit = buffer.getInt(12) > 0 || termCount == 0 ? buffer.getInt(12) : scanDocIdLimit();
+        }
+
+        private int scanDocIdLimit() {
+            int[] limit = {0};
+            for (int i = 0; i < termCount; i++) {
+                postings(termAt(i), (docId, tf) -> limit[0] = Math.max(limit[0], docId + 1));
+            }
+            return limit[0];
+        }
+
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        String termAt(int index) {
+            int entry = buffer.getInt(tableStart + index * 4);
+            byte[] term = new byte[buffer.getShort(entry)];
+            buffer.get(entry + 2, term);
+            return new String(term, StandardCharsets.UTF_8);
+        }
+
+        void postings(String term, PostingConsumer consumer) {
+            int low = 0;
+            int high = termCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = termAt(middle).compareTo(term);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    int entry = buffer.getInt(tableStart + middle * 4);
+                    int valuesStart = entry + 2 + buffer.getShort(entry);
+                    int offset = (int) buffer.getLong(valuesStart);
+                    int length = buffer.getInt(valuesStart + 8);
+                    Postings.decode(buffer.slice(offset, length), consumer);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class TermCursor implements Comparable<TermCursor> {
+        final Segment segment;
+        final int order;
+        int index = -1;
+        String term;
+
+        TermCursor(Segment segment, int order) {
+            this.segment = segment;
+            this.order = order;
+        }
+
+        boolean advance() {
+            if (++index >= segment.termCount) return false;
+            term = segment.termAt(index);
+            return true;
+        }
+
+        @Override
+        public int compareTo(TermCursor other) {
+            int comparison = term.compareTo(other.term);
+            return comparison != 0 ? comparison : Integer.compare(order, other.order);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Postings
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @FunctionalInterface
+    private interface PostingConsumer {
+        void accept(int docId, int termFrequency);
+    }
+
+    private static final class Postings {
+        int[] docIds = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int docId, int frequency) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docIds[size] = docId;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        void forEach(PostingConsumer consumer) {
+            for (int i = 0; i < size; i++) consumer.accept(docIds[i], frequencies[i]);
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size * 3);
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, docIds[i] - previous);
+                writeVarint(out, frequencies[i]);
+                previous = docIds[i];
+            }
+            return out.toByteArray();
+        }
+
+        static void decode(ByteBuffer encoded, PostingConsumer consumer) {
+            int docId = 0;
+            while (encoded.hasRemaining()) {
+                docId += readVarint(encoded);
+                consumer.accept(docId, readVarint(encoded));
+            }
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static int readVarint(ByteBuffer in) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -7,6 +7,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
 /**
  * Simuliert einen Browser, um Webseiten herunterzuladen.
  */
@@ -15,6 +24,8 @@ public class PseudoBrowser {
 
     private String userAgent;
 
+    private HttpClient streamingClient;
+
     public PseudoBrowser(String defaultUserAgent) {
         this.userAgent = defaultUserAgent;
     }
@@ -50,6 +61,91 @@ public class PseudoBrowser {
         return document;
     }
 
+    /**
+     * Lädt eine Webseite als Bytestrom und übergibt nur die vom Extraktor registrierten Elemente an dessen Callbacks.
+     * Im Gegensatz zu {@link #grabWebsiteWithCookies(String)} wird weder der Body als String noch ein
+     * vollständiges Document aufgebaut, der Speicherbedarf bleibt daher unabhängig von der Seitengröße.
+     *
+     * @param uri       Die URL der Webseite.
+     * @param extractor Extraktor mit den registrierten Selektoren.
+     * @return Anzahl der gemeldeten Elemente.
+     */
+    public int streamWebsite(String uri, StreamingHtmlExtractor extractor) throws IOException {
+        return streamWebsite(uri, null, extractor).elements();
+    }
+
+    /**
+     * Wie {@link #streamWebsite(String, StreamingHtmlExtractor)}, aber mit den Cookies einer bestehenden Session
+     * (z. B. aus dem Browser-Kontext), damit auch Seiten hinter dem Login erreichbar sind.
+     *
+     * @param uri          Die URL der Webseite.
+     * @param cookieHeader Wert des Cookie-Headers ({@code name=wert; name2=wert2}) oder null.
+     * @param extractor    Extraktor mit den registrierten Selektoren.
+     * @return Endgültige URL (nach Weiterleitungen), Status und Anzahl der gemeldeten Elemente. Bei einem
+     * Fehlerstatus wird der Body nicht ausgewertet.
+     */
+    public StreamedPage streamWebsite(String uri, String cookieHeader, StreamingHtmlExtractor extractor) throws IOException {
+        log.debug("______________________ Starte HTTP Stream ________________________");
+
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(uri))
+                .header("User-Agent", userAgent)
+                .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8")
+                .header("Accept-Language", "de-DE,de;q=0.9,en;q=0.8")
+                .header("Upgrade-Insecure-Requests", "1")
+                .GET();
+        if (cookieHeader != null && !cookieHeader.isEmpty()) builder.header("Cookie", cookieHeader);
+
+        try {
+            java.net.http.HttpResponse<InputStream> response = getStreamingClient().send(builder.build(), BodyHandlers.ofInputStream());
+            Charset charset = charsetOf(response.headers().firstValue("Content-Type").orElse(""));
+
+            try (InputStream body = response.body()) {
+                int count = response.statusCode() < 400 ? extractor.extract(body, charset, response.uri().toString()) : 0;
+                log.debug("______________________ Beende HTTP Stream ({} Elemente) ________________________", count);
+                return new StreamedPage(response.uri().toString(), response.statusCode(), count);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("HTTP Stream unterbrochen: " + uri, e);
+        }
+    }
+
+    /**
+     * Ergebnis von {@link #streamWebsite(String, String, StreamingHtmlExtractor)}.
+     *
+     * @param url      Endgültige URL nach Weiterleitungen
+     * @param status   HTTP-Status
+     * @param elements Anzahl der gemeldeten Elemente
+     */
+    public record StreamedPage(String url, int status, int elements) {
+    }
+
+    private synchronized HttpClient getStreamingClient() {
+        if (streamingClient == null) {
+            streamingClient = HttpClient.newBuilder()
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+        }
+        return streamingClient;
+    }
+
+    /**
+     * Ermittelt den Zeichensatz aus dem Content-Type-Header, Standard ist UTF-8.
+     */
+    public static Charset charsetOf(String contentType) {
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                try {
+                    return Charset.forName(trimmed.substring(8).replace("\"", "").trim());
+                } catch (Exception e) {
+                    log.debug("Unbekannter Zeichensatz '{}', verwende UTF-8", trimmed);
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
     /**
      * Überprüft, ob ein HTTP-Status ein Redirect ist.
      *
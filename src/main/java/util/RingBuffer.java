@@ -0,0 +1,123 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Begrenzter, lock-freier Ringpuffer mit beliebig vielen Schreibern und Lesern.
+ * <p>
+ * Schreiber reservieren per {@code getAndIncrement} eine Sequenznummer und legen den Wert im zugehörigen Slot ab;
+ * ältere Einträge werden dabei überschrieben. Jeder Leser hält einen eigenen {@link Cursor} und erkennt anhand der
+ * Sequenznummer im Slot, ob er überholt wurde. Verlorene Einträge werden gezählt, statt Schreiber zu blockieren.
+ */
+public final class RingBuffer<T> {
+
+    private final AtomicReferenceArray<Slot<T>> slots;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private final int capacity;
+
+    private final int mask;
+
+    /**
+     * @param capacity Gewünschte Kapazität, wird auf die nächste Zweierpotenz aufgerundet
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Kapazität muss positiv sein: " + capacity);
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Legt einen Wert ab, blockiert nie.
+     *
+     * @return Sequenznummer des Eintrags
+     */
+    public long publish(T value) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence & mask), new Slot<>(sequence, value));
+        return sequence;
+    }
+
+    /**
+     * Erzeugt einen Leser, der nur neue Einträge sieht.
+     */
+    public Cursor<T> newCursor() {
+        return new Cursor<>(this, nextSequence.get());
+    }
+
+    /**
+     * Erzeugt einen Leser, der mit dem ältesten noch vorhandenen Eintrag beginnt.
+     */
+    public Cursor<T> newCursorFromOldest() {
+        return new Cursor<>(this, Math.max(0, nextSequence.get() - capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long published() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Lesezeiger eines einzelnen Konsumenten. Nicht thread-safe, jeder Thread braucht seinen eigenen Cursor.
+     */
+    public static final class Cursor<T> {
+        private final RingBuffer<T> buffer;
+
+        private long next;
+
+        private long lost;
+
+        private Cursor(RingBuffer<T> buffer, long start) {
+            this.buffer = buffer;
+            this.next = start;
+        }
+
+        /**
+         * @return Nächster Eintrag oder null, wenn (noch) keiner verfügbar ist
+         */
+        public T poll() {
+            while (true) {
+                long published = buffer.nextSequence.get();
+                if (next >= published) return null;
+
+                if (published - next > buffer.capacity) {
+                    long oldest = published - buffer.capacity;
+                    lost += oldest - next;
+                    next = oldest;
+                }
+
+                Slot<T> slot = buffer.slots.get((int) (next & buffer.mask));
+                if (slot == null || slot.sequence < next) {
+                    // Sequenz reserviert, Wert aber noch nicht abgelegt
+                    return null;
+                }
+                if (slot.sequence > next) {
+                    // Während des Lesens überschrieben
+                    lost++;
+                    next++;
+                    continue;
+                }
+                next++;
+                return slot.value;
+            }
+        }
+
+        /**
+         * Anzahl der Einträge, die dieser Leser wegen Überholung verpasst hat.
+         */
+        public long lost() {
+            return lost;
+        }
+    }
+
+    private record Slot<T>(long sequence, T value) {
+    }
+}
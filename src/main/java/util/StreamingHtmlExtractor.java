@@ -0,0 +1,334 @@
+package util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Liest HTML als Zeichenstrom und gibt nur die Elemente weiter, die auf einen registrierten Selektor passen.
+ * <p>
+ * Es wird nie das ganze Dokument aufgebaut: Der Extraktor sucht im Strom nach dem Start-Tag des Ziel-Elements
+ * (z. B. {@code tr}), puffert genau dieses Element bis zum passenden End-Tag, parst das Fragment mit Jsoup und
+ * verwirft es danach wieder. Der Speicherbedarf hängt damit nur von der Größe des größten Treffers ab.
+ * <p>
+ * Optionale End-Tags werden wie im HTML-Parser ergänzt: Ein {@code <tr>} ohne {@code </tr>} endet am nächsten
+ * {@code <tr>} derselben Ebene oder am End-Tag der umgebenden Tabelle (entsprechend für {@code td}, {@code li},
+ * {@code option} usw.). Ein einzelner Treffer darf höchstens {@link #MAX_CAPTURE_LENGTH} Zeichen umfassen, größere
+ * werden verworfen.
+ * <p>
+ * Einschränkung: Geprüft wird nur der letzte Teil des Selektors (z. B. {@code tr.umsatz} aus
+ * {@code table#umsaetze tr.umsatz}), da die Vorfahren beim Streamen bereits verworfen sind.
+ */
+@Slf4j
+public class StreamingHtmlExtractor {
+
+    private static final int MAX_TAG_LENGTH = 16 * 1024;
+
+    static final int MAX_CAPTURE_LENGTH = 1024 * 1024;
+
+    /**
+     * Start-Tags, die ein offenes Element mit optionalem End-Tag implizit schließen (auf derselben Ebene).
+     */
+    private static final Map<String, Set<String>> CLOSED_BY_START = Map.of(
+            "tr", Set.of("tr", "tbody", "thead", "tfoot"),
+            "td", Set.of("td", "th", "tr", "tbody", "thead", "tfoot"),
+            "th", Set.of("td", "th", "tr", "tbody", "thead", "tfoot"),
+            "tbody", Set.of("tbody", "thead", "tfoot"),
+            "thead", Set.of("tbody", "thead", "tfoot"),
+            "tfoot", Set.of("tbody", "thead", "tfoot"),
+            "li", Set.of("li"),
+            "option", Set.of("option", "optgroup"),
+            "dt", Set.of("dt", "dd"),
+            "dd", Set.of("dt", "dd"));
+
+    /**
+     * End-Tags der Vorfahren, die ein offenes Element mit optionalem End-Tag implizit schließen.
+     */
+    private static final Map<String, Set<String>> CLOSED_BY_END = Map.of(
+            "tr", Set.of("table", "tbody", "thead", "tfoot"),
+            "td", Set.of("table", "tbody", "thead", "tfoot", "tr"),
+            "th", Set.of("table", "tbody", "thead", "tfoot", "tr"),
+            "tbody", Set.of("table"),
+            "thead", Set.of("table"),
+            "tfoot", Set.of("table"),
+            "li", Set.of("ul", "ol", "menu"),
+            "option", Set.of("select", "datalist", "optgroup"),
+            "dt", Set.of("dl"),
+            "dd", Set.of("dl"));
+
+    /**
+     * Container, in denen dieselben Elemente verschachtelt neu beginnen (z. B. eine Tabelle in einer Zelle).
+     */
+    private static final Set<String> SCOPES = Set.of("table", "ul", "ol", "menu", "select", "datalist", "dl");
+
+    private final List<Registration> registrations = new ArrayList<>();
+
+    /**
+     * Registriert einen Selektor samt Callback.
+     *
+     * @param cssSelector CSS-Selektor, dessen letzter Teil mit einem Tag-Namen beginnen muss (z. B. {@code tr.row})
+     * @param callback    Wird für jedes passende Element aufgerufen
+     * @return Dieser Extraktor (für Verkettung)
+     */
+    public StreamingHtmlExtractor on(String cssSelector, Consumer<Element> callback) {
+        String lastCompound = lastCompound(cssSelector);
+        String tagName = leadingTagName(lastCompound);
+        if (tagName.isEmpty()) {
+            throw new IllegalArgumentException("Selektor muss mit einem Tag-Namen enden: " + cssSelector);
+        }
+        registrations.add(new Registration(tagName, lastCompound, callback));
+        return this;
+    }
+
+    /**
+     * Liest den Strom vollständig und ruft die Callbacks für alle Treffer auf. Der Strom wird nicht geschlossen.
+     *
+     * @param in      HTML-Bytestrom
+     * @param charset Zeichensatz des Stroms
+     * @param baseUri Basis-URL für relative Links in den Treffern
+     * @return Anzahl der gemeldeten Elemente
+     */
+    public int extract(InputStream in, Charset charset, String baseUri) throws IOException {
+        return extract(new BufferedReader(new InputStreamReader(in, charset), 8192), baseUri);
+    }
+
+    public int extract(Reader reader, String baseUri) throws IOException {
+        StringBuilder tag = new StringBuilder(64);
+        StringBuilder capture = new StringBuilder();
+        String captureTag = null;
+        int depth = 0;
+        int scopes = 0; // Innerhalb des Treffers geöffnete Container (verschachtelte Tabellen, Listen)
+        boolean overflow = false;
+        int emitted = 0;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c != '<') {
+                if (captureTag != null && capture.append((char) c).length() > MAX_CAPTURE_LENGTH) {
+                    overflow = discard(captureTag, overflow);
+                    capture.setLength(0);
+                    captureTag = null;
+                }
+                continue;
+            }
+
+            tag.setLength(0);
+            if (!readTag(reader, tag)) break;
+
+            // Kommentare und Doctype enthalten keine relevanten Elemente
+            if (tag.length() > 0 && tag.charAt(0) == '!') {
+                if (isCommentStart(tag)) skipUntil(reader, "-->");
+                continue;
+            }
+
+            boolean closing = tag.length() > 0 && tag.charAt(0) == '/';
+            boolean selfClosing = tag.length() > 0 && tag.charAt(tag.length() - 1) == '/';
+            String name = tagName(tag, closing ? 1 : 0);
+
+            if (captureTag != null) {
+                boolean impliedEnd = scopes == 0 && depth == 1 && (closing
+                        ? CLOSED_BY_END.getOrDefault(captureTag, Set.of()).contains(name)
+                        : CLOSED_BY_START.getOrDefault(captureTag, Set.of()).contains(name));
+                if (impliedEnd) {
+                    // Optionales End-Tag fehlt: Treffer abschließen, das Tag gehört bereits zum Geschwister/Vorfahren
+                    emitted += emit(captureTag, capture.toString(), baseUri);
+                    capture.setLength(0);
+                    captureTag = null;
+                    if (closing) continue;
+                } else {
+                    capture.append('<').append(tag).append('>');
+                    if (SCOPES.contains(name) && !selfClosing) {
+                        scopes = Math.max(0, scopes + (closing ? -1 : 1));
+                    } else if (name.equals(captureTag) && !selfClosing) {
+                        depth += closing ? -1 : 1;
+                        if (depth == 0) {
+                            emitted += emit(captureTag, capture.toString(), baseUri);
+                            capture.setLength(0);
+                            captureTag = null;
+                        }
+                    }
+                    if (captureTag != null && capture.length() > MAX_CAPTURE_LENGTH) {
+                        overflow = discard(captureTag, overflow);
+                        capture.setLength(0);
+                        captureTag = null;
+                    }
+                    continue;
+                }
+            }
+
+            if (closing) continue;
+
+            if (isAnchor(name)) {
+                capture.append('<').append(tag).append('>');
+                if (selfClosing) {
+                    emitted += emit(name, capture.toString(), baseUri);
+                    capture.setLength(0);
+                } else {
+                    captureTag = name;
+                    depth = 1;
+                    scopes = 0;
+                }
+            } else if (name.equals("script") || name.equals("style")) {
+                // Rohtext überspringen, damit z. B. "<tr" in Skripten nicht als Element erkannt wird
+                skipUntil(reader, "</" + name);
+            }
+        }
+
+        // Nicht geschlossenes Element am Dokumentende trotzdem melden (Jsoup ergänzt das End-Tag)
+        if (captureTag != null) {
+            emitted += emit(captureTag, capture.toString(), baseUri);
+        }
+        return emitted;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /// Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private int emit(String tagName, String html, String baseUri) {
+        Element element = parseFragment(tagName, html, baseUri);
+        if (element == null) return 0;
+
+        int count = 0;
+        for (Registration registration : registrations) {
+            if (registration.tagName.equals(tagName) && element.is(registration.selector)) {
+                try {
+                    registration.callback.accept(element);
+                    count++;
+                } catch (Exception e) {
+                    log.warn("Fehler im Callback für '{}': {}", registration.selector, e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Kein End-Tag in Sicht: nicht den Rest des Dokuments puffern. Gewarnt wird einmal pro Dokument.
+     *
+     * @return true (Dokument hatte einen Überlauf)
+     */
+    private static boolean discard(String tagName, boolean warned) {
+        if (!warned) log.warn("Element <{}> größer als {} Zeichen, verworfen", tagName, MAX_CAPTURE_LENGTH);
+        return true;
+    }
+
+    private boolean isAnchor(String name) {
+        for (Registration registration : registrations) {
+            if (registration.tagName.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tabellenelemente werden von Jsoup außerhalb einer Tabelle verworfen, daher wird ein passender Kontext gewählt.
+     */
+    private static Element parseFragment(String tagName, String html, String baseUri) {
+        String contextTag = switch (tagName) {
+            case "tr" -> "tbody";
+            case "td", "th" -> "tr";
+            case "tbody", "thead", "tfoot", "caption", "colgroup" -> "table";
+            case "col" -> "colgroup";
+            case "option", "optgroup" -> "select";
+            default -> "body";
+        };
+        List<Node> nodes = Parser.parseFragment(html, new Element(contextTag), baseUri);
+        for (Node node : nodes) {
+            if (node instanceof Element element && element.normalName().equals(tagName)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Liest bis zum schließenden '>' (Anführungszeichen in Attributen werden berücksichtigt).
+     */
+    private static boolean readTag(Reader reader, StringBuilder tag) throws IOException {
+        char quote = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                return true;
+            }
+            if (tag.length() < MAX_TAG_LENGTH) tag.append((char) c);
+            // Abbruch bei Kommentarbeginn, damit lange Kommentare nicht gepuffert werden
+            if (tag.length() == 3 && isCommentStart(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void skipUntil(Reader reader, String marker) throws IOException {
+        char[] window = new char[marker.length()];
+        int position = 0;
+        long read = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            window[position] = Character.toLowerCase((char) c);
+            position = (position + 1) % window.length;
+            if (++read >= window.length && matches(window, position, marker)) return;
+        }
+    }
+
+    private static boolean matches(char[] window, int start, String marker) {
+        for (int i = 0; i < window.length; i++) {
+            if (window[(start + i) % window.length] != marker.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isCommentStart(CharSequence tag) {
+        return tag.length() >= 3 && tag.charAt(0) == '!' && tag.charAt(1) == '-' && tag.charAt(2) == '-';
+    }
+
+    private static String tagName(CharSequence tag, int start) {
+        int end = start;
+        while (end < tag.length() && (Character.isLetterOrDigit(tag.charAt(end)) || tag.charAt(end) == '-')) {
+            end++;
+        }
+        return tag.subSequence(start, end).toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Liefert den Teil nach dem letzten Kombinator; Klammern ({@code :has(td a)}, {@code [title='a b']}) bleiben ganz.
+     */
+    private static String lastCompound(String cssSelector) {
+        String trimmed = cssSelector.trim();
+        int nesting = 0;
+        int cut = -1;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == '(' || c == '[') nesting++;
+            else if (c == ')' || c == ']') nesting--;
+            else if (nesting == 0 && (c == ' ' || c == '>' || c == '+' || c == '~')) cut = i;
+        }
+        return trimmed.substring(cut + 1).trim();
+    }
+
+    private static String leadingTagName(String compound) {
+        return tagName(compound, 0);
+    }
+
+    private record Registration(String tagName, String selector, Consumer<Element> callback) {
+    }
+}
@@ -0,0 +1,122 @@
+package comdirect.controllers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ohne JavaFX-Toolkit: Der Pulse wird nur protokolliert, {@link RenderScheduler#applyPending} ruft der Test selbst auf.
+ */
+class RenderSchedulerTest {
+
+    private final List<RenderScheduler.Snapshot> rendered = new ArrayList<>();
+
+    private final TestScheduler scheduler = new TestScheduler(rendered::add);
+
+    @Test
+    void rendersSubmittedSnapshotOnNextPulse() {
+        long generation = scheduler.nextGeneration();
+        scheduler.submit(generation, "<p>a</p>", "https://a");
+
+        assertEquals(1, scheduler.pulseRequests.get());
+        scheduler.applyPending();
+        assertEquals(List.of(new RenderScheduler.Snapshot(generation, "<p>a</p>", "https://a")), rendered);
+        assertEquals(1, scheduler.getAppliedCount());
+    }
+
+    @Test
+    void keepsOnlyNewestSnapshotBetweenPulses() {
+        scheduler.submit(scheduler.nextGeneration(), "a", "https://a");
+        long newest = scheduler.nextGeneration();
+        scheduler.submit(newest, "b", "https://b");
+
+        assertEquals(1, scheduler.pulseRequests.get());
+        scheduler.applyPending();
+        assertEquals(1, rendered.size());
+        assertEquals(newest, rendered.get(0).generation());
+        assertEquals(1, scheduler.getDroppedCount());
+    }
+
+    @Test
+    void dropsResultsOfSupersededNavigations() {
+        long older = scheduler.nextGeneration();
+        long newer = scheduler.nextGeneration();
+        assertEquals(newer, scheduler.currentGeneration());
+
+        scheduler.submit(newer, "neu", "https://neu");
+        scheduler.submit(older, "alt", "https://alt"); // Langsamere, ältere Navigation kommt zuletzt an
+        scheduler.applyPending();
+
+        assertEquals(List.of("neu"), rendered.stream().map(RenderScheduler.Snapshot::html).toList());
+        assertEquals(1, scheduler.getDroppedCount());
+    }
+
+    @Test
+    void stopsPulseWhenIdleAndRequestsItAgainOnNextSubmit() {
+        scheduler.submit(scheduler.nextGeneration(), "a", "https://a");
+        scheduler.applyPending();
+        assertTrue(scheduler.running);
+
+        scheduler.applyPending(); // Nichts ausstehend
+        assertFalse(scheduler.running);
+
+        scheduler.submit(scheduler.nextGeneration(), "b", "https://b");
+        assertEquals(2, scheduler.pulseRequests.get());
+        scheduler.applyPending();
+        assertEquals(2, rendered.size());
+    }
+
+    @Test
+    void newestGenerationWinsUnderConcurrentSubmits() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    long generation = scheduler.nextGeneration();
+                    scheduler.submit(generation, "g" + generation, "https://a");
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        scheduler.applyPending();
+        assertEquals(1, rendered.size());
+        assertEquals(scheduler.currentGeneration(), rendered.get(0).generation());
+        assertEquals(1, scheduler.pulseRequests.get());
+    }
+
+    private static class TestScheduler extends RenderScheduler {
+        final AtomicInteger pulseRequests = new AtomicInteger();
+
+        volatile boolean running;
+
+        TestScheduler(Consumer<Snapshot> renderer) {
+            super(renderer);
+        }
+
+        @Override
+        void requestPulse() {
+            pulseRequests.incrementAndGet();
+            startPulse();
+        }
+
+        @Override
+        void startPulse() {
+            running = true;
+        }
+
+        @Override
+        void stopPulse() {
+            running = false;
+        }
+    }
+}
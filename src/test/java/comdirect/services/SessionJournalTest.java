@@ -0,0 +1,148 @@
+package comdirect.services;
+
+import comdirect.config.ComdirectConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.CleanupMode;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionJournalTest {
+
+    @TempDir(cleanup = CleanupMode.NEVER) // Der gemappte Index lässt sich unter Windows erst nach einer GC löschen
+    Path directory;
+
+    @Test
+    void movesThroughHistoryAndCutsForwardEntries() {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("https://a/1", 10);
+        journal.recordNavigation("https://a/2", 10);
+        journal.recordNavigation("https://a/3", 10);
+
+        assertEquals("https://a/2", journal.back());
+        assertEquals("https://a/1", journal.back());
+        assertNull(journal.back());
+        assertEquals("https://a/2", journal.forward());
+
+        journal.recordNavigation("https://a/4", 10);
+        assertEquals(3, journal.size());
+        assertNull(journal.forward());
+        assertEquals("https://a/4", journal.currentUrl());
+        journal.close();
+    }
+
+    @Test
+    void restoresHistoryAfterRestart() {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("https://a/1", 10);
+        journal.recordNavigation("https://a/2", 20);
+        journal.back();
+        journal.close();
+
+        SessionJournal reopened = open(16);
+        assertEquals(2, reopened.size());
+        assertEquals(0, reopened.current());
+        assertEquals("https://a/1", reopened.currentUrl());
+        assertEquals("https://a/2", reopened.forward());
+        assertEquals(20, reopened.entryAt(1).durationMillis());
+        reopened.close();
+    }
+
+    @Test
+    void keepsFormPostsAndDownloadsOutOfHistory() {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("https://a/1", 10);
+        journal.recordFormPost("https://a/form", 5);
+        journal.recordDownload("https://a/pdf", "export/a.pdf");
+
+        assertEquals(1, journal.size());
+        assertEquals("https://a/1", journal.currentUrl());
+        journal.close();
+    }
+
+    @Test
+    void truncatesTextsTooLongForTheLog() {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("data:" + "x".repeat(100_000), 0);
+        journal.recordNavigation("https://a/2", 0);
+
+        assertEquals(65535, journal.entryAt(0).url().length());
+        assertTrue(journal.entryAt(0).url().startsWith("data:x"));
+        assertEquals("https://a/2", journal.entryAt(1).url());
+        journal.close();
+    }
+
+    @Test
+    void dropsHistoryFromFirstCorruptRecord() throws IOException {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("https://a/1", 0);
+        journal.recordNavigation("https://a/2", 0);
+        journal.recordNavigation("https://a/3", 0);
+        journal.close();
+
+        // Typ-Byte des zweiten Satzes zerstören (Satz: Länge, Typ, ...)
+        try (RandomAccessFile log = new RandomAccessFile(directory.resolve("journal.log").toFile(), "rw")) {
+            int firstLength = log.readInt();
+            log.seek(4 + firstLength + 4);
+            log.writeByte(42);
+        }
+
+        SessionJournal reopened = open(16);
+        assertEquals(1, reopened.size());
+        assertEquals("https://a/1", reopened.currentUrl());
+        assertNull(reopened.back());
+        assertNull(reopened.forward());
+        reopened.close();
+    }
+
+    @Test
+    void survivesTruncatedLog() throws IOException {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("https://a/1", 0);
+        journal.recordNavigation("https://a/2", 0);
+        journal.close();
+
+        try (RandomAccessFile log = new RandomAccessFile(directory.resolve("journal.log").toFile(), "rw")) {
+            log.setLength(10);
+        }
+
+        SessionJournal reopened = open(16);
+        assertEquals(0, reopened.size());
+        assertNull(reopened.currentUrl());
+        reopened.recordNavigation("https://b", 0);
+        assertEquals("https://b", reopened.currentUrl());
+        reopened.close();
+    }
+
+    @Test
+    void compactsLargeLogToHistoryNavigations() throws IOException {
+        SessionJournal journal = open(16);
+        journal.recordNavigation("https://a/1", 0);
+        journal.recordFormPost("https://a/form", 0);
+        journal.recordNavigation("https://a/2", 0);
+        journal.back();
+        journal.close();
+        long before = Files.size(directory.resolve("journal.log"));
+
+        SessionJournal compacted = open(0); // Jedes Log ist größer als 0 MB
+        assertTrue(Files.size(directory.resolve("journal.log")) < before);
+        assertEquals(2, compacted.size());
+        assertEquals("https://a/1", compacted.currentUrl());
+        assertEquals("https://a/2", compacted.forward());
+        compacted.close();
+    }
+
+    private SessionJournal open(int maxLogMb) {
+        ComdirectConfig config = new ComdirectConfig();
+        config.getJournal().setDirectory(directory.toString());
+        config.getJournal().setMaxLogMb(maxLogMb);
+        return new SessionJournal(config);
+    }
+}
@@ -0,0 +1,97 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.CleanupMode;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvertedIndexTest {
+
+    @TempDir(cleanup = CleanupMode.NEVER) // Gemappte Segmente lassen sich unter Windows erst nach einer GC löschen
+    Path directory;
+
+    @Test
+    void tokenizesLowercaseWordsOfTwoToFortyCharacters() {
+        assertEquals(List.of("depot", "übersicht", "aktien", "a1b2"),
+                InvertedIndex.tokenize("Depot-Übersicht: 2 Aktien, A1B2 " + "x".repeat(41)));
+        assertEquals(List.of(), InvertedIndex.tokenize(null));
+    }
+
+    @Test
+    void findsDocumentsInMemoryAndOnDisk() throws IOException {
+        InvertedIndex index = new InvertedIndex(directory, 1000);
+        index.add(1, List.of("depot", "aktien"));
+        index.flush();
+        index.add(2, List.of("depot", "konto"));
+
+        assertEquals(1, index.segmentCount());
+        assertEquals(Set.of(1, 2), index.search(List.of("depot"), docId -> true).keySet());
+        assertEquals(Set.of(2), index.search(List.of("konto"), docId -> true).keySet());
+        assertEquals(Set.of(2), index.search(List.of("depot"), docId -> docId != 1).keySet());
+    }
+
+    @Test
+    void ranksDocumentsMatchingMoreTermsHigher() throws IOException {
+        InvertedIndex index = new InvertedIndex(directory, 1000);
+        index.add(1, List.of("depot", "konto"));
+        index.add(2, List.of("depot"));
+        index.add(3, List.of("aktien"));
+
+        Map<Integer, Double> scores = index.search(List.of("depot", "konto"), docId -> true);
+        assertTrue(scores.get(1) > scores.get(2));
+        assertFalse(scores.containsKey(3));
+    }
+
+    @Test
+    void mergeCombinesSegmentsAndDropsDeadDocuments() throws IOException {
+        InvertedIndex index = new InvertedIndex(directory, 1); // Jedes Dokument ein eigenes Segment
+        index.add(1, List.of("depot"));
+        index.add(2, List.of("depot"));
+        index.add(3, List.of("depot"));
+        assertEquals(3, index.segmentCount());
+
+        index.merge(docId -> docId != 2);
+        assertEquals(1, index.segmentCount());
+        assertEquals(Set.of(1, 3), index.search(List.of("depot"), docId -> true).keySet());
+        index.close();
+
+        InvertedIndex reopened = new InvertedIndex(directory, 1);
+        assertEquals(Set.of(1, 3), reopened.search(List.of("depot"), docId -> true).keySet());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".seg")).count());
+        }
+    }
+
+    @Test
+    void reportsWhichDocumentsArePersisted() throws IOException {
+        InvertedIndex index = new InvertedIndex(directory, 1000);
+        assertEquals(0, index.persistedDocIdLimit());
+        index.add(0, List.of("depot"));
+        index.add(5, List.of("konto"));
+        index.flush();
+        index.add(7, List.of("aktien")); // Nur im Speicher, wie vor einem Absturz
+
+        assertEquals(6, index.persistedDocIdLimit());
+        assertEquals(6, new InvertedIndex(directory, 1000).persistedDocIdLimit());
+    }
+
+    @Test
+    void deletesSegmentsMissingFromManifest() throws IOException {
+        new InvertedIndex(directory, 1000).close();
+        Path orphan = Files.write(directory.resolve("00000000000000ff.seg"), new byte[]{1, 2, 3});
+
+        new InvertedIndex(directory, 1000);
+        assertFalse(Files.exists(orphan));
+    }
+}
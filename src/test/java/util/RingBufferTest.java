@@ -0,0 +1,87 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RingBufferTest {
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(8, new RingBuffer<String>(5).capacity());
+        assertEquals(8, new RingBuffer<String>(8).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<String>(0));
+    }
+
+    @Test
+    void newCursorSeesOnlyLaterEntries() {
+        RingBuffer<String> buffer = new RingBuffer<>(4);
+        buffer.publish("alt");
+        RingBuffer.Cursor<String> cursor = buffer.newCursor();
+        buffer.publish("a");
+        buffer.publish("b");
+
+        assertEquals("a", cursor.poll());
+        assertEquals("b", cursor.poll());
+        assertNull(cursor.poll());
+        assertEquals(0, cursor.lost());
+    }
+
+    @Test
+    void cursorFromOldestStartsAtOldestRetainedEntry() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 6; i++) buffer.publish(i);
+
+        RingBuffer.Cursor<Integer> cursor = buffer.newCursorFromOldest();
+        assertEquals(List.of(2, 3, 4, 5), drain(cursor));
+        assertEquals(0, cursor.lost());
+    }
+
+    @Test
+    void overtakenCursorCountsLostEntries() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        RingBuffer.Cursor<Integer> cursor = buffer.newCursor();
+        for (int i = 0; i < 10; i++) buffer.publish(i);
+
+        assertEquals(List.of(6, 7, 8, 9), drain(cursor));
+        assertEquals(6, cursor.lost());
+        assertEquals(10, buffer.published());
+    }
+
+    @Test
+    void concurrentWritersLoseNothingWithinCapacity() throws InterruptedException {
+        int writers = 4;
+        int perWriter = 10_000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(writers * perWriter);
+        RingBuffer.Cursor<Integer> cursor = buffer.newCursor();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int base = w * perWriter;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) buffer.publish(base + i);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        Set<Integer> seen = new HashSet<>(drain(cursor));
+        assertEquals(writers * perWriter, seen.size());
+        assertEquals(0, cursor.lost());
+    }
+
+    private static <T> List<T> drain(RingBuffer.Cursor<T> cursor) {
+        List<T> values = new ArrayList<>();
+        T value;
+        while ((value = cursor.poll()) != null) values.add(value);
+        return values;
+    }
+}
@@ -0,0 +1,104 @@
+package util;
+
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingHtmlExtractorTest {
+
+    private static final String BASE_URI = "https://kunde.comdirect.de/itx/";
+
+    @Test
+    void reportsOnlyElementsMatchingTheLastCompound() throws IOException {
+        List<String> rows = new ArrayList<>();
+        int count = new StreamingHtmlExtractor()
+                .on("table#umsaetze tr.umsatz", row -> rows.add(row.text()))
+                .extract(new StringReader("""
+                        <html><body><table id="umsaetze">
+                          <tr class="kopf"><th>Datum</th></tr>
+                          <tr class="umsatz"><td>01.10.</td><td>-12,50</td></tr>
+                          <tr class="umsatz"><td>02.10.</td><td>100,00</td></tr>
+                        </table></body></html>"""), BASE_URI);
+
+        assertEquals(2, count);
+        assertEquals(List.of("01.10. -12,50", "02.10. 100,00"), rows);
+    }
+
+    @Test
+    void closesElementsWithOptionalEndTags() throws IOException {
+        List<String> rows = new ArrayList<>();
+        new StreamingHtmlExtractor()
+                .on("tr", row -> rows.add(row.text()))
+                .extract(new StringReader("<table><tr><td>a<td>b<tr><td>c</table><p>danach</p>"), BASE_URI);
+
+        assertEquals(List.of("a b", "c"), rows);
+    }
+
+    @Test
+    void keepsNestedTablesInsideTheMatch() throws IOException {
+        List<String> rows = new ArrayList<>();
+        new StreamingHtmlExtractor()
+                .on("tr.x", row -> rows.add(row.text()))
+                .extract(new StringReader("""
+                        <table>
+                          <tr class="x"><td><table><tr><td>innen</td></tr></table></td></tr>
+                          <tr class="x"><td>zwei</td></tr>
+                        </table>"""), BASE_URI);
+
+        assertEquals(List.of("innen", "zwei"), rows);
+    }
+
+    @Test
+    void ignoresMarkupInScriptsAndComments() throws IOException {
+        List<String> rows = new ArrayList<>();
+        new StreamingHtmlExtractor()
+                .on("tr", row -> rows.add(row.text()))
+                .extract(new StringReader("""
+                        <script>var s = "<tr><td>skript</td></tr>";</script>
+                        <!-- <tr><td>kommentar</td></tr> -->
+                        <table><tr><td>echt</td></tr></table>"""), BASE_URI);
+
+        assertEquals(List.of("echt"), rows);
+    }
+
+    @Test
+    void resolvesLinksAgainstBaseUriAndDecodesCharset() throws IOException {
+        List<String> links = new ArrayList<>();
+        byte[] html = "<ul><li><a href=\"/depot\">Übersicht</a></li></ul>".getBytes(StandardCharsets.ISO_8859_1);
+        new StreamingHtmlExtractor()
+                .on("li", item -> {
+                    Element link = item.selectFirst("a");
+                    links.add(link.text() + " " + link.absUrl("href"));
+                })
+                .extract(new ByteArrayInputStream(html), StandardCharsets.ISO_8859_1, BASE_URI);
+
+        assertEquals(List.of("Übersicht https://kunde.comdirect.de/depot"), links);
+    }
+
+    @Test
+    void discardsElementsLargerThanTheLimit() throws IOException {
+        List<String> items = new ArrayList<>();
+        String html = "<ul><li>" + "x".repeat(StreamingHtmlExtractor.MAX_CAPTURE_LENGTH + 1) + "</li><li>ok</li></ul>";
+        new StreamingHtmlExtractor()
+                .on("li", item -> items.add(item.text()))
+                .extract(new StringReader(html), BASE_URI);
+
+        assertEquals(List.of("ok"), items);
+    }
+
+    @Test
+    void rejectsSelectorsWithoutTagName() {
+        StreamingHtmlExtractor extractor = new StreamingHtmlExtractor();
+        assertThrows(IllegalArgumentException.class, () -> extractor.on("table .umsatz", row -> {
+        }));
+    }
+}